@@ -0,0 +1,93 @@
+package ua.lyashko.clear.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ua.lyashko.clear.ClearApplication;
+import ua.lyashko.clear.dto.UserBulkResult;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.service.UserService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deleting and patching {@code users} rows at once through the bulk service methods versus looping over
+ * the single-row ones. Every invocation starts from a freshly seeded table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBulkBenchmark {
+
+    @Param({"1000", "10000"})
+    private int users;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private JdbcTemplate jdbcTemplate;
+    private List<Long> ids;
+    private User patch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ClearApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:bulk" + users);
+        userService = context.getBean(UserService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        ids = new ArrayList<>(users);
+        for (long id = 1; id <= users; id++) {
+            ids.add(-id);
+        }
+        patch = new User();
+        patch.setAddress("Redacted");
+    }
+
+    @Setup(Level.Invocation)
+    public void seed() {
+        // negative ids keep the seed out of the way of users_seq
+        jdbcTemplate.execute("TRUNCATE TABLE users");
+        jdbcTemplate.update("INSERT INTO users (id, email, first_name, last_name, birth_date) " +
+                "SELECT -X, 'seed' || X || '@example.com', 'First', 'Last', " +
+                "DATEADD('DAY', -MOD(X, 20000), TIMESTAMP '2005-01-01 00:00:00') " +
+                "FROM SYSTEM_RANGE(1, " + users + ")");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserBulkResult bulkDelete() {
+        return userService.deleteUsers(ids);
+    }
+
+    @Benchmark
+    public int loopDelete() {
+        for (Long id : ids) {
+            userService.deleteUser(id);
+        }
+        return ids.size();
+    }
+
+    @Benchmark
+    public UserBulkResult bulkPatch() {
+        return userService.updatePartialUsers(ids, patch);
+    }
+
+    @Benchmark
+    public int loopPatch() {
+        for (Long id : ids) {
+            userService.updatePartialUser(id, patch);
+        }
+        return ids.size();
+    }
+}
@@ -0,0 +1,111 @@
+package ua.lyashko.clear.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ua.lyashko.clear.controller.UserJsonCache;
+import ua.lyashko.clear.controller.UserJsonSerializer;
+import ua.lyashko.clear.entity.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson round trip of {@link User} with the same mapper settings Spring Boot applies to the web layer,
+ * and serialization of a single user and of a 500-user search result through the default bean
+ * serializer, {@link UserJsonSerializer}, and {@link UserJsonSerializer} with pre-serialized users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserJsonBenchmark {
+    private static final int SEARCH_RESULT_SIZE = 500;
+
+    private ObjectWriter writer;
+    private ObjectWriter tunedWriter;
+    private ObjectWriter cachedWriter;
+    private ObjectReader reader;
+    private User user;
+    private List<User> users;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = bootMapper().build();
+        writer = objectMapper.writer();
+        reader = objectMapper.readerFor(User.class);
+        tunedWriter = bootMapper().serializerByType(User.class, new UserJsonSerializer()).build().writer();
+        UserJsonSerializer cachingSerializer = new UserJsonSerializer();
+        cachingSerializer.setJsonCache(new UserJsonCache(new SimpleMeterRegistry(), 10_000));
+        cachedWriter = bootMapper().serializerByType(User.class, cachingSerializer).build().writer();
+
+        user = user(42L);
+        users = new ArrayList<>(SEARCH_RESULT_SIZE);
+        for (long id = 1; id <= SEARCH_RESULT_SIZE; id++) {
+            users.add(user(id));
+        }
+        json = writer.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return writer.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] serializeTuned() throws IOException {
+        return tunedWriter.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] serializeCached() throws IOException {
+        return cachedWriter.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] serializeSearchResult() throws IOException {
+        return writer.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public byte[] serializeSearchResultTuned() throws IOException {
+        return tunedWriter.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public byte[] serializeSearchResultCached() throws IOException {
+        return cachedWriter.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public User deserialize() throws IOException {
+        return reader.readValue(json);
+    }
+
+    private static Jackson2ObjectMapperBuilder bootMapper() {
+        return Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail("john.doe" + id + "@example.com");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setBirthDate(new Date(631152000000L + id * TimeUnit.DAYS.toMillis(1)));
+        user.setAddress("1 Infinite Loop, Cupertino");
+        user.setPhoneNumber("+1-408-996-1010");
+        user.setVersion(0L);
+        return user;
+    }
+}
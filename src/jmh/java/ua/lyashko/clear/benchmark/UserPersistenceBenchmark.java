@@ -0,0 +1,85 @@
+package ua.lyashko.clear.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ua.lyashko.clear.ClearApplication;
+import ua.lyashko.clear.dto.UserField;
+import ua.lyashko.clear.dto.UserPage;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.service.UserService;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end service calls against the in-memory H2 database, seeded with {@code tableSize} users
+ * whose birth dates are spread evenly over ~55 years.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserPersistenceBenchmark {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final Date SEARCH_FROM = new Date(631152000000L); // 1990-01-01
+    private static final Date SEARCH_TO = new Date(SEARCH_FROM.getTime() + 30 * DAY_MILLIS);
+    private static final List<UserField> ID_AND_EMAIL = List.of(UserField.ID, UserField.EMAIL);
+
+    @Param({"10000", "100000", "1000000"})
+    private int tableSize;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private final AtomicLong emailSequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ClearApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark" + tableSize, "--user.cache.enabled=false");
+        userService = context.getBean(UserService.class);
+        // negative ids keep the seed out of the way of users_seq
+        context.getBean(JdbcTemplate.class).update("INSERT INTO users (id, email, first_name, last_name, birth_date) " +
+                "SELECT -X, 'seed' || X || '@example.com', 'First', 'Last', " +
+                "DATEADD('DAY', -MOD(X, 20000), TIMESTAMP '2005-01-01 00:00:00') " +
+                "FROM SYSTEM_RANGE(1, " + tableSize + ")");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public User create() {
+        User user = new User();
+        user.setEmail("bench" + emailSequence.incrementAndGet() + "@example.com");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setBirthDate(new Date(0));
+        return userService.createUser(user);
+    }
+
+    @Benchmark
+    public List<User> searchMonth() {
+        return userService.searchUsersByBirthDateRange(SEARCH_FROM, SEARCH_TO);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> searchMonthIdAndEmail() {
+        return userService.searchUserFieldsByBirthDateRange(SEARCH_FROM, SEARCH_TO, ID_AND_EMAIL);
+    }
+
+    @Benchmark
+    public UserPage searchFirstPage() {
+        return userService.searchUsersByBirthDateRange(SEARCH_FROM, SEARCH_TO, null, 50);
+    }
+}
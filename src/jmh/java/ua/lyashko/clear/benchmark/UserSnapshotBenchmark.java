@@ -0,0 +1,95 @@
+package ua.lyashko.clear.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ua.lyashko.clear.ClearApplication;
+import ua.lyashko.clear.dto.UserHistogram;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.repository.UserSnapshot;
+import ua.lyashko.clear.service.UserService;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Age histogram of the whole table from the off-heap snapshot versus from the user entities returned by
+ * the birth date search, the way reports computed it before, plus the cost of an incremental refresh after
+ * a hundred updates. Run with {@code -prof gc} to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserSnapshotBenchmark {
+
+    @Param({"100000"})
+    private int users;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private UserSnapshot snapshot;
+    private JdbcTemplate jdbcTemplate;
+    private int updateRound;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ClearApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:snapshot" + users,
+                        "--user.snapshot.enabled=true", "--user.snapshot.refresh-interval=1h");
+        userService = context.getBean(UserService.class);
+        snapshot = context.getBean(UserSnapshot.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("INSERT INTO users (id, email, first_name, last_name, address, birth_date) " +
+                "SELECT -X, 'seed' || X || '@example.com', 'First', 'Last', 'City ' || MOD(X, 50), " +
+                "DATEADD('DAY', -MOD(X, 20000), TIMESTAMP '2005-01-01 00:00:00') " +
+                "FROM SYSTEM_RANGE(1, " + users + ")");
+        snapshot.refresh();
+    }
+
+    @Setup(Level.Invocation)
+    public void touch(BenchmarkParams params) {
+        if (params.getBenchmark().endsWith("incrementalRefresh")) {
+            updateRound++;
+            jdbcTemplate.update("UPDATE users SET birth_date = DATEADD('DAY', 1, birth_date) WHERE id BETWEEN ? AND ?",
+                    -100L * updateRound, -100L * (updateRound - 1) - 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserHistogram snapshotAgeHistogram() {
+        return snapshot.histogram(UserHistogram.Dimension.AGE, 5, null);
+    }
+
+    @Benchmark
+    public TreeMap<Integer, Long> entityAgeHistogram() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        TreeMap<Integer, Long> counts = new TreeMap<>();
+        for (User user : userService.searchUsersByBirthDateRange(new Date(Long.MIN_VALUE / 2), new Date())) {
+            LocalDate birthDate = LocalDate.ofEpochDay(Math.floorDiv(user.getBirthDate().getTime(), 24L * 60 * 60 * 1000));
+            int age = birthDate.until(today).getYears();
+            counts.merge(age / 5 * 5, 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public int incrementalRefresh() {
+        snapshot.refresh();
+        return snapshot.size();
+    }
+}
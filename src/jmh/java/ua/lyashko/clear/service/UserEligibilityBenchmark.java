@@ -0,0 +1,59 @@
+package ua.lyashko.clear.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Eligibility check with the per-day cached cutoff against the previous millisecond arithmetic,
+ * which allocated a {@code Date} per call and got birthdays wrong.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserEligibilityBenchmark {
+    private static final int AGE_REQUIREMENT = 18;
+
+    private UserEligibility eligibility;
+    private Date adultBirthDate;
+    private Date minorBirthDate;
+
+    @Setup
+    public void setUp() {
+        eligibility = new UserEligibility(AGE_REQUIREMENT);
+        adultBirthDate = new Date(0);
+        minorBirthDate = new Date(System.currentTimeMillis() - 24L * 60 * 60 * 1000);
+    }
+
+    @Benchmark
+    public boolean eligibleUser() {
+        return eligibility.isEligible(adultBirthDate);
+    }
+
+    @Benchmark
+    public boolean ineligibleUser() {
+        return eligibility.isEligible(minorBirthDate);
+    }
+
+    @Benchmark
+    public boolean legacyEligibleUser() {
+        return legacyIsUserEligible(adultBirthDate);
+    }
+
+    @Benchmark
+    public boolean legacyIneligibleUser() {
+        return legacyIsUserEligible(minorBirthDate);
+    }
+
+    private static boolean legacyIsUserEligible(Date birthDate) {
+        Date currentDate = new Date();
+        long ageInMillis = currentDate.getTime() - birthDate.getTime();
+        long ageInYears = ageInMillis / (1000L * 60 * 60 * 24 * 365);
+
+        return ageInYears >= AGE_REQUIREMENT;
+    }
+}
@@ -0,0 +1,74 @@
+package ua.lyashko.clear.service;
+
+import org.openjdk.jmh.annotations.*;
+import ua.lyashko.clear.exception.UserApiException;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rejecting an underage user: the shared stackless exception against the previous
+ * {@code IllegalArgumentException} with a freshly built message. {@code depth} adds frames below the
+ * throw, since a request thread in the servlet container is well over a hundred frames deep and
+ * capturing a stack trace costs in proportion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserRejectionBenchmark {
+    private static final int AGE_REQUIREMENT = 18;
+
+    @Param({"0", "150"})
+    private int depth;
+
+    private UserEligibility eligibility;
+    private UserService userService;
+    private Date minorBirthDate;
+
+    @Setup
+    public void setUp() {
+        eligibility = new UserEligibility(AGE_REQUIREMENT);
+        userService = new UserService(null, new UserChangeTracker(), eligibility);
+        minorBirthDate = new Date(System.currentTimeMillis() - 24L * 60 * 60 * 1000);
+    }
+
+    @Benchmark
+    public String rejectIneligible() {
+        return atDepth(depth, true);
+    }
+
+    @Benchmark
+    public String legacyRejectIneligible() {
+        return atDepth(depth, false);
+    }
+
+    private String atDepth(int remaining, boolean current) {
+        if (remaining > 0) {
+            return atDepth(remaining - 1, current);
+        }
+        return current ? reject() : legacyReject();
+    }
+
+    private String reject() {
+        try {
+            userService.ensureEligible(minorBirthDate);
+            return null;
+        } catch (UserApiException e) {
+            return e.getMessage();
+        }
+    }
+
+    private String legacyReject() {
+        try {
+            if (!eligibility.isEligible(minorBirthDate)) {
+                throw new IllegalArgumentException("User must be at least " + AGE_REQUIREMENT + " years old.");
+            }
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+}
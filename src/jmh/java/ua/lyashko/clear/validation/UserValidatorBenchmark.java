@@ -0,0 +1,90 @@
+package ua.lyashko.clear.validation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import ua.lyashko.clear.entity.User;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserValidator} against the original controller implementation ({@code legacy*}), which
+ * compiled the email regex and allocated the error list and a {@code Date} on every call.
+ * Run with {@code -prof gc} to compare the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserValidatorBenchmark {
+    private UserValidator userValidator;
+    private User validUser;
+    private User invalidUser;
+
+    @Setup
+    public void setUp() {
+        userValidator = new UserValidator(new SimpleMeterRegistry());
+
+        validUser = new User();
+        validUser.setEmail("john.doe@example.com");
+        validUser.setFirstName("John");
+        validUser.setLastName("Doe");
+        validUser.setBirthDate(new Date(0));
+
+        invalidUser = new User();
+        invalidUser.setEmail("not-an-email");
+        invalidUser.setBirthDate(new Date(Long.MAX_VALUE));
+    }
+
+    @Benchmark
+    public List<String> validateValidUser() {
+        return userValidator.validate(validUser);
+    }
+
+    @Benchmark
+    public List<String> validateInvalidUser() {
+        return userValidator.validate(invalidUser);
+    }
+
+    @Benchmark
+    public boolean email() {
+        return UserValidator.isValidEmail(validUser.getEmail());
+    }
+
+    @Benchmark
+    public List<String> legacyValidateValidUser() {
+        return legacyValidate(validUser);
+    }
+
+    @Benchmark
+    public List<String> legacyValidateInvalidUser() {
+        return legacyValidate(invalidUser);
+    }
+
+    @Benchmark
+    public boolean legacyEmail() {
+        return validUser.getEmail().matches("^[A-Za-z0-9+_.-]+@(.+)$");
+    }
+
+    private static List<String> legacyValidate(User user) {
+        List<String> validationErrors = new ArrayList<>();
+        String email = user.getEmail();
+        if (email==null || email.isEmpty() || !email.matches("^[A-Za-z0-9+_.-]+@(.+)$")) {
+            validationErrors.add("Invalid email address.");
+        }
+        if (user.getFirstName()==null || user.getFirstName().isEmpty()) {
+            validationErrors.add("First name is required.");
+        }
+        if (user.getLastName()==null || user.getLastName().isEmpty()) {
+            validationErrors.add("Last name is required.");
+        }
+        if (user.getBirthDate()==null || !user.getBirthDate().before(new Date())) {
+            validationErrors.add("Invalid birth date or date in the future.");
+        }
+        return validationErrors;
+    }
+}
@@ -2,8 +2,13 @@ package ua.lyashko.clear;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
 
-@SpringBootApplication
+/**
+ * R2DBC auto-configuration is excluded because a {@code ConnectionFactory} bean switches off the JDBC
+ * {@code DataSource} that JPA and Flyway run on. The reactive profile manages its own connection pool.
+ */
+@SpringBootApplication(exclude = R2dbcAutoConfiguration.class)
 public class ClearApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,25 @@
+package ua.lyashko.clear.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ua.lyashko.clear.handler.UserRateLimiter;
+
+/**
+ * Puts the per-client rate limit in front of the search endpoints, the ones that can read a large part
+ * of the table per request. Nothing is registered unless {@code user.rate-limit.enabled} is set.
+ */
+@Configuration
+public class RateLimitConfig implements WebMvcConfigurer {
+    private final ObjectProvider<UserRateLimiter> rateLimiter;
+
+    public RateLimitConfig(ObjectProvider<UserRateLimiter> rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        rateLimiter.ifAvailable(limiter -> registry.addInterceptor(limiter).addPathPatterns("/api/users/search/**"));
+    }
+}
@@ -0,0 +1,67 @@
+package ua.lyashko.clear.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports how many users the application came up with and how long it took to be ready for requests,
+ * which with the {@code persistent} profile includes opening the database file and rebuilding the
+ * in-memory structures from it. Logged once and kept as {@code user.startup.*} gauges.
+ */
+@Component
+public class StartupReport implements ApplicationListener<ApplicationReadyEvent> {
+    private static final Logger log = LoggerFactory.getLogger(StartupReport.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final String url;
+    private volatile long users;
+    private volatile Duration startup = Duration.ZERO;
+
+    @Autowired
+    public StartupReport(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                         @Value("${spring.datasource.url}") String url) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.url = url;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+        users = count;
+        startup = event.getTimeTaken() == null ? Duration.ZERO : event.getTimeTaken();
+        Gauge.builder("user.startup.users", this, StartupReport::users)
+                .description("Users in the database when the application became ready")
+                .register(meterRegistry);
+        TimeGauge.builder("user.startup.time", this, TimeUnit.MILLISECONDS, report -> report.startup.toMillis())
+                .description("Time from launch until the application was ready for requests")
+                .register(meterRegistry);
+        log.info("Ready with {} users from {} in {} ms ({} users/s)", users, url, startup.toMillis(),
+                Math.round(usersPerSecond()));
+    }
+
+    public long users() {
+        return users;
+    }
+
+    public Duration startup() {
+        return startup;
+    }
+
+    public double usersPerSecond() {
+        return startup.isZero() ? 0 : users * 1000.0 / startup.toMillis();
+    }
+}
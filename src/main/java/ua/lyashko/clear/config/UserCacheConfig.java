@@ -0,0 +1,18 @@
+package ua.lyashko.clear.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Turns on the read-through cache in front of {@code UserRepository}. Without this configuration the
+ * cache annotations on the repository are inert and every lookup goes to the database.
+ * Size, TTL and stats recording come from {@code spring.cache.caffeine.spec}.
+ */
+@Configuration
+@EnableCaching
+@ConditionalOnProperty(name = "user.cache.enabled", havingValue = "true")
+public class UserCacheConfig {
+    public static final String USERS_BY_ID = "usersById";
+    public static final String USER_EXISTS = "userExists";
+}
@@ -0,0 +1,79 @@
+package ua.lyashko.clear.config;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves requests, and therefore every repository call made on the request thread, on virtual threads.
+ * Enabled with the {@code virtual-threads} profile and requires Java 21; the build itself still targets 17,
+ * so the virtual-thread executor is looked up reflectively.
+ */
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadConfig implements WebMvcConfigurer {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+    private static final String SCHEDULER_PARALLELISM = "jdk.virtualThreadScheduler.parallelism";
+
+    private final ExecutorService virtualThreadExecutor;
+
+    public VirtualThreadConfig(@Value("${spring.datasource.hikari.maximum-pool-size}") int maxPoolSize) {
+        if (Runtime.version().feature() < 21) {
+            throw new IllegalStateException("The virtual-threads profile requires Java 21, running on " + Runtime.version());
+        }
+        reserveCarrierThreads(maxPoolSize);
+        this.virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    /**
+     * Streaming responses are written from the async executor, keep those on virtual threads as well.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreadExecutor));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        virtualThreadExecutor.shutdown();
+    }
+
+    /**
+     * H2 and Hikari guard their internals with {@code synchronized}, which pins the carrier thread for the
+     * duration of the call. A virtual thread waiting on a row lock inside H2 stays pinned, so if every carrier
+     * ended up pinned that way the lock holder could never be scheduled again. At most one pinned thread per
+     * pooled connection can exist, so keeping more carriers than connections rules that out.
+     * Has no effect once the first virtual thread was created, or when the property is set explicitly.
+     */
+    private static void reserveCarrierThreads(int maxPoolSize) {
+        if (System.getProperty(SCHEDULER_PARALLELISM)==null) {
+            int parallelism = Math.max(Runtime.getRuntime().availableProcessors(), maxPoolSize + 1);
+            System.setProperty(SCHEDULER_PARALLELISM, String.valueOf(parallelism));
+            log.info("Virtual thread scheduler parallelism set to {} for a pool of {} connections", parallelism, maxPoolSize);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual thread executor is not available", e);
+        }
+    }
+}
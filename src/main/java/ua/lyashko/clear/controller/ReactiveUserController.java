@@ -0,0 +1,78 @@
+package ua.lyashko.clear.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.service.ReactiveUserService;
+import ua.lyashko.clear.validation.UserValidator;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The {@code /api/users} contract of {@link UserController} served by WebFlux in the reactive profile.
+ */
+@RestController
+@RequestMapping("/api/users")
+@Profile("reactive")
+public class ReactiveUserController {
+    private final ReactiveUserService userService;
+    private final UserValidator userValidator;
+
+    @Autowired
+    public ReactiveUserController(ReactiveUserService userService, UserValidator userValidator) {
+        this.userService = userService;
+        this.userValidator = userValidator;
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<Object>> create(@RequestBody User user) {
+        List<String> validationErrors = userValidator.validate(user);
+        if (!validationErrors.isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest().body(validationErrors));
+        }
+        return userService.createUser(user)
+                .map(createdUser -> ResponseEntity.created(URI.create("/api/users/" + createdUser.getId())).build());
+    }
+
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<User>> updateUser(@PathVariable Long id, @RequestBody User updatedUser) {
+        if (!userValidator.validate(updatedUser).isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return userService.updateUser(id, updatedUser)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PatchMapping("/{id}")
+    public Mono<ResponseEntity<User>> updatePartialUser(@PathVariable Long id, @RequestBody User partialUser) {
+        return userService.updatePartialUser(id, partialUser)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> delete(@PathVariable Long id) {
+        return userService.deleteUser(id)
+                .then(Mono.just(ResponseEntity.noContent().build()));
+    }
+
+    /**
+     * Streams the matches as a JSON array, or as NDJSON when asked for {@code application/x-ndjson};
+     * rows are only read from the database as fast as the client consumes them.
+     */
+    @GetMapping(value = "/search", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<User> searchUserByBirthDateRange(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date to) {
+        return userService.searchUsersByBirthDateRange(from, to);
+    }
+}
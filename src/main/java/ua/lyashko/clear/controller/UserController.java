@@ -1,53 +1,216 @@
 package ua.lyashko.clear.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ua.lyashko.clear.dto.UserBatchResult;
+import ua.lyashko.clear.dto.UserBulkPatch;
+import ua.lyashko.clear.dto.UserBulkResult;
+import ua.lyashko.clear.dto.UserCreationStatus;
+import ua.lyashko.clear.dto.UserExportFormat;
+import ua.lyashko.clear.dto.UserField;
+import ua.lyashko.clear.dto.UserHistogram;
+import ua.lyashko.clear.dto.UserPage;
 import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.exception.PreconditionFailedException;
+import ua.lyashko.clear.exception.ResourceNotFoundException;
+import ua.lyashko.clear.repository.UserSnapshot;
+import ua.lyashko.clear.service.UserChangeTracker;
+import ua.lyashko.clear.service.UserCreationQueue;
+import ua.lyashko.clear.service.UserEligibility;
+import ua.lyashko.clear.service.UserSearchCache;
 import ua.lyashko.clear.service.UserService;
+import ua.lyashko.clear.validation.UserValidator;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/users")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UserController {
+    static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     private final UserService userService;
+    private final UserValidator userValidator;
+    private final ObjectMapper objectMapper;
+    private final UserChangeTracker changeTracker;
+    private final UserEligibility eligibility;
+
+    @Value("${user.batch.size}")
+    private int batchSize;
+
+    private UserCreationQueue creationQueue;
+
+    private UserSnapshot snapshot;
+
+    private UserSearchCache searchCache;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserValidator userValidator, ObjectMapper objectMapper,
+                          UserChangeTracker changeTracker, UserEligibility eligibility) {
         this.userService = userService;
+        this.userValidator = userValidator;
+        this.objectMapper = objectMapper;
+        this.changeTracker = changeTracker;
+        this.eligibility = eligibility;
+    }
+
+    /**
+     * Present only with {@code user.async-create.enabled}; creation is then queued and answered with 202.
+     */
+    @Autowired(required = false)
+    public void setCreationQueue(UserCreationQueue creationQueue) {
+        this.creationQueue = creationQueue;
+    }
+
+    /**
+     * Present only with {@code user.snapshot.enabled}; serves the statistics endpoints.
+     */
+    @Autowired(required = false)
+    public void setSnapshot(UserSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Present only with {@code user.search.cache.enabled}; identical searches then share one query.
+     */
+    @Autowired(required = false)
+    public void setSearchCache(UserSearchCache searchCache) {
+        this.searchCache = searchCache;
     }
 
     @PostMapping
     public ResponseEntity<Object> create(@RequestBody User user) {
-        List<String> validationErrors = validateUser(user);
+        List<String> validationErrors = userValidator.validate(user);
         if (!validationErrors.isEmpty()) {
             return ResponseEntity.badRequest().body(validationErrors);
         }
+        if (creationQueue != null) {
+            return creationQueue.submit(user)
+                    .<ResponseEntity<Object>>map(trackingId -> ResponseEntity
+                            .accepted()
+                            .location(URI.create("/api/users/creations/" + trackingId))
+                            .body(UserCreationStatus.pending(trackingId)))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                            .header(HttpHeaders.RETRY_AFTER, "1")
+                            .build());
+        }
         User createdUser = userService.createUser(user);
         URI location = URI.create("/api/users/" + createdUser.getId());
         return ResponseEntity.created(location).build();
     }
 
+    @GetMapping("/creations/{trackingId}")
+    public ResponseEntity<UserCreationStatus> creationStatus(@PathVariable UUID trackingId) {
+        if (creationQueue == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return creationQueue.status(trackingId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Imports a JSON array or an NDJSON stream of users. Records are read one by one, so the request
+     * body is never held in memory, and valid ones are inserted {@code user.batch.size} at a time.
+     */
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public ResponseEntity<List<UserBatchResult>> createBatch(InputStream body) throws IOException {
+        List<UserBatchResult> results = new ArrayList<>();
+        Map<Integer, User> batch = new LinkedHashMap<>();
+        try (MappingIterator<User> users = objectMapper.readerFor(User.class).readValues(body)) {
+            for (int index = 0; users.hasNextValue(); index++) {
+                User user = users.nextValue();
+                List<String> validationErrors = userValidator.validate(user);
+                if (!validationErrors.isEmpty()) {
+                    results.add(UserBatchResult.rejected(index, validationErrors));
+                    continue;
+                }
+                batch.put(index, user);
+                if (batch.size() == batchSize) {
+                    results.addAll(userService.createUsers(batch));
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            results.addAll(userService.createUsers(batch));
+        }
+        results.sort(Comparator.comparingInt(UserBatchResult::index));
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Returns the user with its version as a strong ETag; a matching {@code If-None-Match} gets
+     * 304 without a body.
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<User> getUser(@PathVariable Long id) {
+        return userService.findUser(id)
+                .map(user -> ResponseEntity.ok().eTag(eTag(user)).body(user))
+                .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + id));
+    }
+
+    /**
+     * Replaces the user. With {@code If-Match} the write only happens while the user is still at that
+     * ETag's version; otherwise the answer is 412.
+     */
     @PutMapping("/{id}")
-    public ResponseEntity<User> updateUser(@PathVariable Long id, @RequestBody User updatedUser) {
-        List<String> validationErrors = validateUser(updatedUser);
+    public ResponseEntity<User> updateUser(@PathVariable Long id, @RequestBody User updatedUser,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        List<String> validationErrors = userValidator.validate(updatedUser);
         if (!validationErrors.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
-        return userService.updateUser(id, updatedUser)
-                .map(ResponseEntity::ok)
+        Long expectedVersion = expectedVersion(ifMatch);
+        Optional<User> user = expectedVersion==null
+                ? userService.updateUser(id, updatedUser)
+                : userService.updateUser(id, updatedUser, expectedVersion);
+        return user.map(updated -> ResponseEntity.ok().eTag(eTag(updated)).body(updated))
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @PatchMapping("/{id}")
-    public ResponseEntity<User> updatePartialUser(@PathVariable Long id, @RequestBody User partialUser) {
-        return userService.updatePartialUser(id, partialUser)
-                .map(ResponseEntity::ok)
+    public ResponseEntity<User> updatePartialUser(@PathVariable Long id, @RequestBody User partialUser,
+                                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long expectedVersion = expectedVersion(ifMatch);
+        Optional<User> user = expectedVersion==null
+                ? userService.updatePartialUser(id, partialUser)
+                : userService.updatePartialUser(id, partialUser, expectedVersion);
+        return user.map(updated -> ResponseEntity.ok().eTag(eTag(updated)).body(updated))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -57,39 +220,236 @@ public class UserController {
         return ResponseEntity.noContent().build();
     }
 
-    @GetMapping("/search")
-    public ResponseEntity<List<User>> searchUserByBirthDateRange(
+    @PostMapping("/bulk-delete")
+    public ResponseEntity<UserBulkResult> deleteBulk(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(userService.deleteUsers(ids));
+    }
+
+    @DeleteMapping
+    public ResponseEntity<UserBulkResult> deleteByBirthDateRange(
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date to) {
-        return ResponseEntity.ok(userService.searchUsersByBirthDateRange(from, to));
+        return ResponseEntity.ok(userService.deleteUsersByBirthDateRange(from, to));
     }
 
-    private List<String> validateUser(User user) {
-        List<String> validationErrors = new ArrayList<>();
-        if (isEmptyOrNull(user.getEmail()) || !isValidEmail(user.getEmail())) {
-            validationErrors.add("Invalid email address.");
+    @PatchMapping("/bulk")
+    public ResponseEntity<UserBulkResult> updatePartialBulk(@RequestBody UserBulkPatch bulkPatch) {
+        if (bulkPatch.ids()==null || bulkPatch.patch()==null) {
+            return ResponseEntity.badRequest().build();
         }
-        if (isEmptyOrNull(user.getFirstName())) {
-            validationErrors.add("First name is required.");
+        return ResponseEntity.ok(userService.updatePartialUsers(bulkPatch.ids(), bulkPatch.patch()));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<Object> searchUserByBirthDateRange(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date to,
+            @RequestParam(defaultValue = "false") boolean eligibleOnly,
+            WebRequest request) {
+        if (notModifiedSinceLastWrite(request, eligibleOnly)) {
+            return null;
         }
-        if (isEmptyOrNull(user.getLastName())) {
-            validationErrors.add("Last name is required.");
+        Date upperBound = searchUpperBound(from, to, eligibleOnly);
+        if (upperBound==null) {
+            return ResponseEntity.ok(List.of());
         }
-        if (user.getBirthDate()==null || !isPastDate(user.getBirthDate())) {
-            validationErrors.add("Invalid birth date or date in the future.");
+        if (searchCache != null) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(searchCache.search(from, upperBound));
         }
-        return validationErrors;
+        return ResponseEntity.ok(userService.searchUsersByBirthDateRange(from, upperBound));
     }
 
-    private boolean isEmptyOrNull(String str) {
-        return str==null || str.isEmpty();
+    /**
+     * Search that returns only the comma-separated {@code fields}, read straight from the selected columns.
+     */
+    @GetMapping(value = "/search", params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> searchUserFieldsByBirthDateRange(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date to,
+            @RequestParam List<String> fields,
+            @RequestParam(defaultValue = "false") boolean eligibleOnly,
+            WebRequest request) {
+        List<UserField> selected = new ArrayList<>(fields.size());
+        for (String property : fields) {
+            Optional<UserField> field = UserField.fromProperty(property.trim());
+            if (field.isEmpty()) {
+                return ResponseEntity.badRequest().build();
+            }
+            if (!selected.contains(field.get())) {
+                selected.add(field.get());
+            }
+        }
+        if (selected.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (notModifiedSinceLastWrite(request, eligibleOnly)) {
+            return null;
+        }
+        Date upperBound = searchUpperBound(from, to, eligibleOnly);
+        if (upperBound==null) {
+            return ResponseEntity.ok(List.of());
+        }
+        return ResponseEntity.ok(userService.searchUserFieldsByBirthDateRange(from, upperBound, selected));
+    }
+
+    @GetMapping("/search/page")
+    public ResponseEntity<UserPage> searchUserPageByBirthDateRange(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(defaultValue = "false") boolean eligibleOnly,
+            WebRequest request) {
+        if (notModifiedSinceLastWrite(request, eligibleOnly)) {
+            return null;
+        }
+        Date upperBound = searchUpperBound(from, to, eligibleOnly);
+        if (upperBound==null) {
+            return ResponseEntity.ok(new UserPage(List.of(), null));
+        }
+        return ResponseEntity.ok(userService.searchUsersByBirthDateRange(from, upperBound, cursor, size));
+    }
+
+    @GetMapping("/search/stream")
+    public ResponseEntity<StreamingResponseBody> streamUserByBirthDateRange(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd") Date to,
+            @RequestParam(defaultValue = "false") boolean eligibleOnly) {
+        // once the body streams the status is sent, a bad range must be refused before that
+        userService.validateDateRange(from, to);
+        // the servlet container buffers the response, flushing after every row would defeat it
+        ObjectWriter lineWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        Date upperBound = searchUpperBound(from, to, eligibleOnly);
+        StreamingResponseBody body = out -> {
+            if (upperBound==null) {
+                return;
+            }
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                userService.streamUsersByBirthDateRange(from, upperBound, user -> writeLine(lineWriter, generator, user));
+            }
+        };
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Counts users by {@code age} or {@code birth-year} in buckets {@code width} years wide, optionally only
+     * those at {@code address}. Answered from the columnar snapshot, so the counts lag writes by up to
+     * {@code user.snapshot.refresh-interval}; {@code asOf} in the body tells when it was refreshed.
+     */
+    @GetMapping("/stats/histogram")
+    public ResponseEntity<UserHistogram> histogram(
+            @RequestParam(defaultValue = "age") String by,
+            @RequestParam(defaultValue = "1") int width,
+            @RequestParam(required = false) String address) {
+        if (snapshot == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Optional<UserHistogram.Dimension> dimension = UserHistogram.Dimension.parse(by);
+        if (dimension.isEmpty() || width < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(snapshot.histogram(dimension.get(), width, address));
     }
 
-    private boolean isValidEmail(String email) {
-        return email!=null && email.matches("^[A-Za-z0-9+_.-]+@(.+)$");
+    /**
+     * Streams the users table, optionally limited to a birth date range, as CSV or NDJSON. Rows are
+     * copied from a database cursor to the response as they are read, so memory use does not grow
+     * with the table. With {@code gzip=true} the body is sent gzip-encoded.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date to,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        Optional<UserExportFormat> exportFormat = UserExportFormat.parse(format);
+        if (exportFormat.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, EXPORT_BUFFER_SIZE) : out;
+            Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE);
+            userService.exportUsers(from, to, exportFormat.get(), writer);
+            writer.flush();
+            if (gzip) {
+                ((GZIPOutputStream) target).finish();
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.get().mediaType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("users." + exportFormat.get().extension()).build().toString());
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
 
-    private boolean isPastDate(Date date) {
-        return date!=null && date.before(new Date());
+    /**
+     * Conditional GET for search results: the weak ETag and Last-Modified come from the write tracker, so
+     * a client that already holds the latest answer gets 304 before any query runs. They are read before
+     * the search, so a write racing with it only makes the next request re-fetch. Eligible-only results
+     * also change when the day rolls over, so their tag carries the eligibility day.
+     */
+    private boolean notModifiedSinceLastWrite(WebRequest request, boolean eligibleOnly) {
+        String tag = changeTracker.tag();
+        long lastModified = changeTracker.lastModified();
+        if (eligibleOnly) {
+            long cutoffDay = eligibility.cutoffDay();
+            tag += "-" + cutoffDay;
+            lastModified = Math.max(lastModified, TimeUnit.DAYS.toMillis(cutoffDay));
+        }
+        return request.checkNotModified("W/\"" + tag + "\"", lastModified);
+    }
+
+    /**
+     * Upper bound for a birth date search. With {@code eligibleOnly} the eligibility cutoff is pushed into
+     * the range, so ineligible users are never read; null when that leaves nothing to search.
+     * An inverted range is passed through for the service to reject.
+     */
+    private Date searchUpperBound(Date from, Date to, boolean eligibleOnly) {
+        if (!eligibleOnly || from.after(to)) {
+            return to;
+        }
+        Date latest = eligibility.latestEligibleBirthDate();
+        if (!latest.before(to)) {
+            return to;
+        }
+        return latest.before(from) ? null : latest;
+    }
+
+    private static String eTag(User user) {
+        return "\"" + user.getVersion() + "\"";
+    }
+
+    /**
+     * Version named by an {@code If-Match} header, or null when the request is unconditional.
+     * Only a single strong version tag can match; anything else fails the precondition.
+     */
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch==null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() > 2 && tag.charAt(0) == '"' && tag.charAt(tag.length() - 1) == '"') {
+            try {
+                return Long.parseLong(tag.substring(1, tag.length() - 1));
+            } catch (NumberFormatException e) {
+                // fall through to 412
+            }
+        }
+        throw new PreconditionFailedException("If-Match does not name a version of this user.");
+    }
+
+    private void writeLine(ObjectWriter lineWriter, JsonGenerator generator, Object value) {
+        try {
+            lineWriter.writeValue(generator, value);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -0,0 +1,53 @@
+package ua.lyashko.clear.controller;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Serialized JSON of recently written users, one entry per id holding the bytes of a single version.
+ * Every write bumps the version, so an entry is only served for exactly the state it was made from and
+ * a newer version simply replaces it. Rows changed by hand without bumping the version would keep their
+ * old JSON until evicted.
+ */
+@Component
+@ConditionalOnProperty(name = "user.json-cache.enabled", havingValue = "true")
+public class UserJsonCache {
+    private final Cache<Long, Entry> entries;
+
+    @Autowired
+    public UserJsonCache(MeterRegistry meterRegistry, @Value("${user.json-cache.max-size}") long maxSize) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "userJson");
+    }
+
+    /**
+     * The JSON of the user at {@code version}, made by {@code serializer} if not cached yet.
+     */
+    public SerializableString get(Long id, Long version, Supplier<SerializableString> serializer) {
+        Entry entry = entries.getIfPresent(id);
+        if (entry != null && entry.version() == version) {
+            return entry.json();
+        }
+        SerializableString json = serializer.get();
+        // materialize the UTF-8 form once, so every later write is a plain byte copy
+        json.asUnquotedUTF8();
+        entries.asMap().merge(id, new Entry(version, json),
+                (current, fresh) -> current.version() > fresh.version() ? current : fresh);
+        return json;
+    }
+
+    private record Entry(long version, SerializableString json) {
+    }
+}
@@ -0,0 +1,176 @@
+package ua.lyashko.clear.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.jackson.JsonComponent;
+import ua.lyashko.clear.entity.User;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@link User} without reflection, producing the same JSON as the default bean serializer:
+ * field names are pre-encoded once, and birth dates are formatted from their epoch day through
+ * {@link LocalDate} into a fixed-width buffer instead of going through {@code StdDateFormat}.
+ * When the mapper is configured differently (timestamps, a custom date format or time zone) dates
+ * fall back to the mapper's own formatting.
+ * <p>
+ * With a {@link UserJsonCache} present, the bytes of a user are kept per id and version and copied
+ * straight to the response the next time the same version is written.
+ */
+@JsonComponent
+public class UserJsonSerializer extends StdSerializer<User> {
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString EMAIL = new SerializedString("email");
+    private static final SerializedString FIRST_NAME = new SerializedString("firstName");
+    private static final SerializedString LAST_NAME = new SerializedString("lastName");
+    private static final SerializedString BIRTH_DATE = new SerializedString("birthDate");
+    private static final SerializedString ADDRESS = new SerializedString("address");
+    private static final SerializedString PHONE_NUMBER = new SerializedString("phoneNumber");
+    private static final SerializedString VERSION = new SerializedString("version");
+    // "yyyy-MM-ddTHH:mm:ss.SSS+00:00", what StdDateFormat writes in UTC
+    private static final int DATE_LENGTH = 29;
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+    private static final JsonFactory CACHE_FACTORY = new JsonFactory();
+
+    private UserJsonCache jsonCache;
+
+    public UserJsonSerializer() {
+        super(User.class);
+    }
+
+    /**
+     * Present only with {@code user.json-cache.enabled}.
+     */
+    @Autowired(required = false)
+    public void setJsonCache(UserJsonCache jsonCache) {
+        this.jsonCache = jsonCache;
+    }
+
+    @Override
+    public void serialize(User user, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        boolean fastDates = fastDates(provider);
+        if (jsonCache != null && fastDates && gen.getPrettyPrinter() == null
+                && user.getId() != null && user.getVersion() != null) {
+            gen.writeRawValue(jsonCache.get(user.getId(), user.getVersion(), () -> preSerialize(user)));
+            return;
+        }
+        gen.writeStartObject(user);
+        writeFields(user, gen, fastDates ? null : provider);
+        gen.writeEndObject();
+    }
+
+    private static SerializableString preSerialize(User user) {
+        ByteArrayBuilder bytes = new ByteArrayBuilder(256);
+        try (JsonGenerator gen = CACHE_FACTORY.createGenerator(bytes)) {
+            gen.writeStartObject();
+            writeFields(user, gen, null);
+            gen.writeEndObject();
+        } catch (IOException e) {
+            // nothing to fail on, the target is in memory
+            throw new IllegalStateException(e);
+        }
+        return new SerializedString(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the fields in the order the bean serializer would. Dates are formatted here unless a
+     * {@code provider} is given to format them instead.
+     */
+    private static void writeFields(User user, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeFieldName(ID);
+        writeNumber(gen, user.getId());
+        gen.writeFieldName(EMAIL);
+        gen.writeString(user.getEmail());
+        gen.writeFieldName(FIRST_NAME);
+        gen.writeString(user.getFirstName());
+        gen.writeFieldName(LAST_NAME);
+        gen.writeString(user.getLastName());
+        gen.writeFieldName(BIRTH_DATE);
+        writeDate(gen, user.getBirthDate(), provider);
+        gen.writeFieldName(ADDRESS);
+        gen.writeString(user.getAddress());
+        gen.writeFieldName(PHONE_NUMBER);
+        gen.writeString(user.getPhoneNumber());
+        gen.writeFieldName(VERSION);
+        writeNumber(gen, user.getVersion());
+    }
+
+    private static void writeNumber(JsonGenerator gen, Long value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(value);
+        }
+    }
+
+    private static void writeDate(JsonGenerator gen, Date date, SerializerProvider provider) throws IOException {
+        if (date == null) {
+            gen.writeNull();
+            return;
+        }
+        if (provider != null) {
+            provider.defaultSerializeDateValue(date, gen);
+            return;
+        }
+        long millis = date.getTime();
+        LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(millis, MILLIS_PER_DAY));
+        if (day.getYear() < 0 || day.getYear() > 9999) {
+            // not four digits, leave the sign and padding rules to StdDateFormat
+            gen.writeString(new StdDateFormat().format(date));
+            return;
+        }
+        int millisOfDay = (int) Math.floorMod(millis, MILLIS_PER_DAY);
+        char[] text = new char[DATE_LENGTH];
+        digits(text, 0, day.getYear(), 4);
+        text[4] = '-';
+        digits(text, 5, day.getMonthValue(), 2);
+        text[7] = '-';
+        digits(text, 8, day.getDayOfMonth(), 2);
+        text[10] = 'T';
+        digits(text, 11, millisOfDay / 3_600_000, 2);
+        text[13] = ':';
+        digits(text, 14, millisOfDay / 60_000 % 60, 2);
+        text[16] = ':';
+        digits(text, 17, millisOfDay / 1000 % 60, 2);
+        text[19] = '.';
+        digits(text, 20, millisOfDay % 1000, 3);
+        text[23] = '+';
+        text[24] = '0';
+        text[25] = '0';
+        text[26] = ':';
+        text[27] = '0';
+        text[28] = '0';
+        gen.writeString(text, 0, DATE_LENGTH);
+    }
+
+    private static void digits(char[] text, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            text[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Whether the mapper writes dates the way Spring Boot configures it by default: ISO-8601 text from
+     * {@code StdDateFormat} in UTC. Only then can the fixed-width path reproduce its output.
+     */
+    private static boolean fastDates(SerializerProvider provider) {
+        return !provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                && !provider.getConfig().hasExplicitTimeZone()
+                && provider.getConfig().getDateFormat() instanceof StdDateFormat format
+                && format.getClass() == StdDateFormat.class
+                && format.isColonIncludedInTimeZone();
+    }
+}
@@ -0,0 +1,21 @@
+package ua.lyashko.clear.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of one record of a batch import; {@code index} is the record's position in the request body.
+ */
+public record UserBatchResult(int index, Status status, Long id, List<String> errors) {
+
+    public enum Status {
+        CREATED, REJECTED
+    }
+
+    public static UserBatchResult created(int index, Long id) {
+        return new UserBatchResult(index, Status.CREATED, id, List.of());
+    }
+
+    public static UserBatchResult rejected(int index, List<String> errors) {
+        return new UserBatchResult(index, Status.REJECTED, null, errors);
+    }
+}
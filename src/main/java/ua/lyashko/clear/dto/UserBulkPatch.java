@@ -0,0 +1,11 @@
+package ua.lyashko.clear.dto;
+
+import ua.lyashko.clear.entity.User;
+
+import java.util.List;
+
+/**
+ * One partial update applied to many users; only the non-null fields of {@code patch} are written.
+ */
+public record UserBulkPatch(List<Long> ids, User patch) {
+}
@@ -0,0 +1,9 @@
+package ua.lyashko.clear.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk delete or update: how many users were affected and which requested ids did not exist.
+ */
+public record UserBulkResult(int affected, List<Long> notFound) {
+}
@@ -0,0 +1,24 @@
+package ua.lyashko.clear.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Progress of a user accepted for asynchronous creation; {@code id} is set once the user is created.
+ */
+public record UserCreationStatus(UUID trackingId, Status status, Long id, List<String> errors) {
+
+    public enum Status {
+        PENDING, CREATED, REJECTED
+    }
+
+    public static UserCreationStatus pending(UUID trackingId) {
+        return new UserCreationStatus(trackingId, Status.PENDING, null, List.of());
+    }
+
+    public static UserCreationStatus of(UUID trackingId, UserBatchResult result) {
+        return result.status() == UserBatchResult.Status.CREATED
+                ? new UserCreationStatus(trackingId, Status.CREATED, result.id(), List.of())
+                : new UserCreationStatus(trackingId, Status.REJECTED, null, result.errors());
+    }
+}
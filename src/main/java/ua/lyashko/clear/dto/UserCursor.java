@@ -0,0 +1,31 @@
+package ua.lyashko.clear.dto;
+
+import ua.lyashko.clear.exception.InvalidRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Keyset position in the {@code (birth_date, id)} ordering of the search results.
+ * Serialized as an opaque URL-safe token so clients never depend on its layout.
+ */
+public record UserCursor(Date birthDate, Long id) {
+    private static final InvalidRequestException INVALID_CURSOR = new InvalidRequestException("Invalid cursor.");
+
+    public String encode() {
+        String raw = birthDate.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static UserCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new UserCursor(new Date(Long.parseLong(raw.substring(0, separator))),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw INVALID_CURSOR;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ua.lyashko.clear.dto;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Formats of the users export, one user per line in both.
+ */
+public enum UserExportFormat {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String mediaType;
+    private final String extension;
+
+    UserExportFormat(String mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public static Optional<UserExportFormat> parse(String name) {
+        for (UserExportFormat format : values()) {
+            if (format.name().equals(name.toUpperCase(Locale.ROOT))) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,42 @@
+package ua.lyashko.clear.dto;
+
+import java.util.Optional;
+
+/**
+ * User properties that can be picked with the {@code fields} selector of a search, with the column each one reads.
+ */
+public enum UserField {
+    ID("id", "id"),
+    EMAIL("email", "email"),
+    FIRST_NAME("firstName", "first_name"),
+    LAST_NAME("lastName", "last_name"),
+    BIRTH_DATE("birthDate", "birth_date"),
+    ADDRESS("address", "address"),
+    PHONE_NUMBER("phoneNumber", "phone_number"),
+    VERSION("version", "version");
+
+    private final String property;
+    private final String column;
+
+    UserField(String property, String column) {
+        this.property = property;
+        this.column = column;
+    }
+
+    public String property() {
+        return property;
+    }
+
+    public String column() {
+        return column;
+    }
+
+    public static Optional<UserField> fromProperty(String property) {
+        for (UserField field : values()) {
+            if (field.property.equals(property)) {
+                return Optional.of(field);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,33 @@
+package ua.lyashko.clear.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Users counted by age or birth year, in buckets of {@code width} years. Buckets run from the lowest to
+ * the highest non-empty one, both inclusive, and {@code to} is inclusive as well. Users without a birth
+ * date, or born after today when counting by age, are only in {@code unknown}. {@code asOf} is when the
+ * snapshot the counts come from was taken.
+ */
+public record UserHistogram(Dimension by, int width, long total, long unknown, List<Bucket> buckets, Instant asOf) {
+
+    public record Bucket(int from, int to, long count) {
+    }
+
+    public enum Dimension {
+        AGE,
+        BIRTH_YEAR;
+
+        public static Optional<Dimension> parse(String name) {
+            String normalized = name.toUpperCase(Locale.ROOT).replace('-', '_');
+            for (Dimension dimension : values()) {
+                if (dimension.name().equals(normalized)) {
+                    return Optional.of(dimension);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ua.lyashko.clear.dto;
+
+import ua.lyashko.clear.entity.User;
+
+import java.util.List;
+
+/**
+ * One keyset page of search results. {@code nextCursor} is {@code null} on the last page.
+ */
+public record UserPage(List<User> users, String nextCursor) {
+}
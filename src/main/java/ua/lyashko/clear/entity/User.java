@@ -12,7 +12,8 @@ import java.util.Date;
 @Setter
 public class User {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "email")
@@ -33,5 +34,9 @@ public class User {
     @Column(name = "phone_number")
     private String phoneNumber;
 
+    @Version
+    @Column(name = "version")
+    private Long version;
+
 
 }
@@ -0,0 +1,19 @@
+package ua.lyashko.clear.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The user is valid but younger than the configured age requirement.
+ */
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class IneligibleUserException extends UserApiException {
+    public IneligibleUserException(int ageRequirement) {
+        super("User must be at least " + ageRequirement + " years old.");
+    }
+
+    @Override
+    public HttpStatus status() {
+        return HttpStatus.UNPROCESSABLE_ENTITY;
+    }
+}
@@ -0,0 +1,20 @@
+package ua.lyashko.clear.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A request parameter that is well-formed but unusable, such as a reversed date range or a
+ * cursor that was not issued by this API.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidRequestException extends UserApiException {
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+
+    @Override
+    public HttpStatus status() {
+        return HttpStatus.BAD_REQUEST;
+    }
+}
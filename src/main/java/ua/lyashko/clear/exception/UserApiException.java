@@ -0,0 +1,17 @@
+package ua.lyashko.clear.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Expected failure of a user API request, answered with a 4xx problem response.
+ * These describe the request, not the server, so no stack trace is captured: under a flood of bad
+ * requests filling in the trace is most of the cost of rejecting one. Instances carry no per-call
+ * state, so ones with a fixed message can be created once and thrown repeatedly.
+ */
+public abstract class UserApiException extends RuntimeException {
+    protected UserApiException(String message) {
+        super(message, null, false, false);
+    }
+
+    public abstract HttpStatus status();
+}
@@ -1,54 +1,115 @@
 package ua.lyashko.clear.handler;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.validation.BindException;
 import org.springframework.validation.BindingResult;
-import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.ErrorResponse;
+import org.springframework.web.ErrorResponseException;
+import org.springframework.web.HttpMediaTypeException;
+import org.springframework.web.HttpRequestMethodNotSupportedException;
+import org.springframework.web.bind.ServletRequestBindingException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
-import ua.lyashko.clear.exception.ResourceNotFoundException;
+import ua.lyashko.clear.exception.TooManyRequestsException;
+import ua.lyashko.clear.exception.UserApiException;
 
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Maps failures to RFC 7807 {@code application/problem+json} responses and counts them by status
+ * and exception type in {@code user.api.exceptions}.
+ * <p>
+ * Everything caused by the request itself is answered with a 4xx; only exceptions nobody expected
+ * end up as a 500 and are logged with their stack trace.
+ */
 @RestControllerAdvice
 public class GlobalExceptionHandler {
+    private static final Logger log = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
-    @ExceptionHandler(ResourceNotFoundException.class)
-    @ResponseStatus(HttpStatus.NOT_FOUND)
-    public ResponseEntity<String> handleResourceNotFoundException(ResourceNotFoundException e) {
-        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
     }
 
-    @ExceptionHandler(MethodArgumentNotValidException.class)
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
-    public ResponseEntity<List<String>> handleValidationException(MethodArgumentNotValidException e) {
-        BindingResult result = e.getBindingResult();
-        List<String> errors = new ArrayList<>();
-        result.getFieldErrors().forEach(fieldError -> {
-            String error = fieldError.getField() + ": " + fieldError.getDefaultMessage();
-            errors.add(error);
-        });
-        return ResponseEntity.badRequest().body(errors);
+    @ExceptionHandler(UserApiException.class)
+    public ResponseEntity<ProblemDetail> handleUserApiException(UserApiException e) {
+        return problem(e, e.status(), e.getMessage());
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ProblemDetail> handleTooManyRequestsException(TooManyRequestsException e) {
+        countHandled(e, e.status());
+        return ResponseEntity.status(e.status())
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(e.retryAfterSeconds()))
+                .body(ProblemDetail.forStatusAndDetail(e.status(), e.getMessage()));
     }
 
     @ExceptionHandler(BindException.class)
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
-    public ResponseEntity<List<String>> handleBindException(BindException e) {
+    public ResponseEntity<ProblemDetail> handleBindException(BindException e) {
+        // also covers MethodArgumentNotValidException
         BindingResult result = e.getBindingResult();
         List<String> errors = new ArrayList<>();
         result.getFieldErrors().forEach(fieldError -> {
             String error = fieldError.getField() + ": " + fieldError.getDefaultMessage();
             errors.add(error);
         });
-        return ResponseEntity.badRequest().body(errors);
+        ResponseEntity<ProblemDetail> response = problem(e, HttpStatus.BAD_REQUEST, "Invalid request content.");
+        response.getBody().setProperty("errors", errors);
+        return response;
+    }
+
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<ProblemDetail> handleNotReadableException(HttpMessageNotReadableException e) {
+        return problem(e, HttpStatus.BAD_REQUEST, "Malformed request body.");
+    }
+
+    @ExceptionHandler(TypeMismatchException.class)
+    public ResponseEntity<ProblemDetail> handleTypeMismatchException(TypeMismatchException e) {
+        String name = e.getPropertyName()==null ? "value" : "'" + e.getPropertyName() + "'";
+        return problem(e, HttpStatus.BAD_REQUEST, "Invalid " + name + ".");
+    }
+
+    /**
+     * Framework exceptions that already know their status and problem detail, such as a missing
+     * request parameter or an unsupported media type.
+     */
+    @ExceptionHandler({ErrorResponseException.class, ServletRequestBindingException.class,
+            HttpRequestMethodNotSupportedException.class, HttpMediaTypeException.class})
+    public ResponseEntity<ProblemDetail> handleErrorResponse(Exception e) {
+        ErrorResponse errorResponse = (ErrorResponse) e;
+        countHandled(e, errorResponse.getStatusCode());
+        return ResponseEntity.status(errorResponse.getStatusCode())
+                .headers(errorResponse.getHeaders())
+                .body(errorResponse.getBody());
     }
 
     @ExceptionHandler(Exception.class)
-    @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
-    public ResponseEntity<String> handleInternalServerError(Exception e) {
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+    public ResponseEntity<ProblemDetail> handleInternalServerError(Exception e) {
+        log.error("Unhandled exception", e);
+        return problem(e, HttpStatus.INTERNAL_SERVER_ERROR, "Internal server error.");
+    }
+
+    private ResponseEntity<ProblemDetail> problem(Exception e, HttpStatus status, String detail) {
+        countHandled(e, status);
+        return ResponseEntity.status(status).body(ProblemDetail.forStatusAndDetail(status, detail));
+    }
+
+    private void countHandled(Exception e, HttpStatusCode status) {
+        meterRegistry.counter("user.api.exceptions",
+                "exception", e.getClass().getSimpleName(),
+                "status", Integer.toString(status.value())).increment();
     }
 }
@@ -0,0 +1,109 @@
+package ua.lyashko.clear.handler;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ua.lyashko.clear.exception.TooManyRequestsException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket per client, refilled at {@code user.rate-limit.requests-per-second} and holding up to
+ * {@code user.rate-limit.burst} requests. A client over its limit gets 429 with Retry-After before the
+ * request reaches a controller, so it cannot tie up database connections.
+ * <p>
+ * Each bucket is a single {@link AtomicLong} holding the time at which it will be full again (the
+ * generic cell rate algorithm, equivalent to a token bucket), updated by CAS without locks or
+ * allocation. Clients are told apart by {@code user.rate-limit.client-header} when set, otherwise by
+ * remote address; idle buckets are dropped, at most {@code user.rate-limit.max-clients} are kept.
+ * <p>
+ * Off by default: behind a proxy or gateway every request has the same remote address, so without a
+ * client header all callers would share one bucket. Set the header when enabling it there.
+ */
+@Component
+@ConditionalOnProperty(name = "user.rate-limit.enabled", havingValue = "true")
+public class UserRateLimiter implements HandlerInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(UserRateLimiter.class);
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final String clientHeader;
+    private final LongSupplier nanoClock;
+    private final Cache<String, AtomicLong> buckets;
+    private final Counter allowed;
+    private final Counter limited;
+
+    @Autowired
+    public UserRateLimiter(@Value("${user.rate-limit.requests-per-second}") double requestsPerSecond,
+                           @Value("${user.rate-limit.burst}") int burst,
+                           @Value("${user.rate-limit.client-header:}") String clientHeader,
+                           @Value("${user.rate-limit.max-clients}") long maxClients,
+                           MeterRegistry meterRegistry) {
+        this(requestsPerSecond, burst, clientHeader, maxClients, meterRegistry, System::nanoTime);
+        if (this.clientHeader == null) {
+            log.warn("Rate limiting by remote address, behind a proxy all clients share one bucket; "
+                    + "set user.rate-limit.client-header there");
+        }
+    }
+
+    public UserRateLimiter(double requestsPerSecond, int burst, String clientHeader, long maxClients,
+                           MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.burstNanos = intervalNanos * burst;
+        this.clientHeader = clientHeader == null || clientHeader.isBlank() ? null : clientHeader;
+        this.nanoClock = nanoClock;
+        // an idle bucket is full again after burstNanos, forgetting it then changes nothing
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofNanos(Math.max(burstNanos, TimeUnit.SECONDS.toNanos(1))))
+                .maximumSize(maxClients)
+                .build();
+        this.allowed = Counter.builder("user.rate-limit.requests").tag("outcome", "allowed").register(meterRegistry);
+        this.limited = Counter.builder("user.rate-limit.requests").tag("outcome", "limited").register(meterRegistry);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String header = clientHeader == null ? null : request.getHeader(clientHeader);
+        long waitNanos = acquire(header == null ? request.getRemoteAddr() : header);
+        if (waitNanos > 0) {
+            throw new TooManyRequestsException(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999)));
+        }
+        return true;
+    }
+
+    /**
+     * Takes one token from the client's bucket. Returns 0 when the request may proceed, otherwise how
+     * long until a token is available.
+     */
+    public long acquire(String client) {
+        long now = nanoClock.getAsLong();
+        AtomicLong fullAt = buckets.get(client, key -> new AtomicLong(now - burstNanos));
+        while (true) {
+            long current = fullAt.get();
+            // an idle bucket is never fuller than full
+            long next = Math.max(current, now - burstNanos) + intervalNanos;
+            long wait = next - now;
+            if (wait > 0) {
+                limited.increment();
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ua.lyashko.clear.repository;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Readable;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ua.lyashko.clear.entity.User;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * R2DBC counterpart of {@link UserRepository} for the reactive profile. Runs the same statements as the
+ * JDBC fragments, so writes and reads behave identically on both stacks.
+ * <p>
+ * The connection pool is owned here rather than exposed as a {@code ConnectionFactory} bean, which would
+ * make Spring Boot back off from the JDBC {@code DataSource}.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveUserRepository {
+    private static final String COLUMNS = UserRowMapper.COLUMNS;
+
+    private final ConnectionPool connectionPool;
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    @Autowired
+    public ReactiveUserRepository(@Value("${user.reactive.r2dbc-url}") String url,
+                                  @Value("${spring.datasource.username}") String username,
+                                  @Value("${spring.datasource.password}") String password,
+                                  @Value("${user.reactive.pool.initial-size}") int initialSize,
+                                  @Value("${user.reactive.pool.max-size}") int maxSize) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        this.connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .initialSize(initialSize)
+                .maxSize(maxSize)
+                .build());
+        this.databaseClient = DatabaseClient.create(connectionPool);
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionPool));
+    }
+
+    @PreDestroy
+    public void close() {
+        connectionPool.dispose();
+    }
+
+    public Mono<User> insert(User user) {
+        // the id is a users_seq value of its own, which never falls into a block Hibernate's pooled optimizer hands out
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("SELECT " + COLUMNS + " FROM FINAL TABLE (" +
+                "INSERT INTO users (id, email, first_name, last_name, birth_date, address, phone_number, version) " +
+                "VALUES (NEXT VALUE FOR users_seq, :email, :first_name, :last_name, :birth_date, :address, :phone_number, 0))");
+        spec = bind(spec, "email", user.getEmail(), String.class);
+        spec = bind(spec, "first_name", user.getFirstName(), String.class);
+        spec = bind(spec, "last_name", user.getLastName(), String.class);
+        spec = bind(spec, "birth_date", toLocalDateTime(user.getBirthDate()), LocalDateTime.class);
+        spec = bind(spec, "address", user.getAddress(), String.class);
+        spec = bind(spec, "phone_number", user.getPhoneNumber(), String.class);
+        return spec.map(ReactiveUserRepository::mapRow).one();
+    }
+
+    public Mono<User> replaceById(Long id, User user) {
+        return update(id, user, false);
+    }
+
+    public Mono<User> patchById(Long id, User user) {
+        return update(id, user, true);
+    }
+
+    public Mono<Long> deleteById(Long id) {
+        return databaseClient.sql("DELETE FROM users WHERE id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    /**
+     * Rows are emitted as the driver reads them and only as fast as the subscriber requests them.
+     */
+    public Flux<User> findByBirthDateBetween(Date from, Date to) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM users WHERE birth_date BETWEEN :from AND :to " +
+                        "ORDER BY birth_date, id")
+                .bind("from", toLocalDateTime(from))
+                .bind("to", toLocalDateTime(to))
+                .map(ReactiveUserRepository::mapRow)
+                .all();
+    }
+
+    private Mono<User> update(Long id, User user, boolean skipNulls) {
+        List<String> assignments = new ArrayList<>(7);
+        List<Object[]> values = new ArrayList<>(6);
+        assign(assignments, values, "email", user.getEmail(), String.class, skipNulls);
+        assign(assignments, values, "first_name", user.getFirstName(), String.class, skipNulls);
+        assign(assignments, values, "last_name", user.getLastName(), String.class, skipNulls);
+        assign(assignments, values, "birth_date", toLocalDateTime(user.getBirthDate()), LocalDateTime.class, skipNulls);
+        assign(assignments, values, "address", user.getAddress(), String.class, skipNulls);
+        assign(assignments, values, "phone_number", user.getPhoneNumber(), String.class, skipNulls);
+        Mono<User> reread = databaseClient.sql("SELECT " + COLUMNS + " FROM users WHERE id = :id")
+                .bind("id", id)
+                .map(ReactiveUserRepository::mapRow)
+                .one();
+        if (assignments.isEmpty()) {
+            return reread;
+        }
+        assignments.add("version = version + 1");
+        // no FINAL TABLE here: H2 2.1 deletes the row when such an UPDATE violates the unique email index
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("UPDATE users SET " +
+                String.join(", ", assignments) + " WHERE id = :id").bind("id", id);
+        for (Object[] value : values) {
+            spec = bind(spec, (String) value[0], value[1], (Class<?>) value[2]);
+        }
+        return spec.fetch()
+                .rowsUpdated()
+                .flatMap(updated -> updated == 0 ? Mono.<User>empty() : reread)
+                .as(transactionalOperator::transactional);
+    }
+
+    private static void assign(List<String> assignments, List<Object[]> values, String column, Object value,
+                               Class<?> type, boolean skipNulls) {
+        if (value==null && skipNulls) {
+            return;
+        }
+        assignments.add(column + " = :" + column);
+        values.add(new Object[]{column, value, type});
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bind(DatabaseClient.GenericExecuteSpec spec, String name,
+                                                          Object value, Class<?> type) {
+        return value==null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    private static User mapRow(Readable row) {
+        User user = new User();
+        user.setId(row.get("id", Long.class));
+        user.setEmail(row.get("email", String.class));
+        user.setFirstName(row.get("first_name", String.class));
+        user.setLastName(row.get("last_name", String.class));
+        LocalDateTime birthDate = row.get("birth_date", LocalDateTime.class);
+        user.setBirthDate(birthDate==null ? null : Timestamp.valueOf(birthDate));
+        user.setAddress(row.get("address", String.class));
+        user.setPhoneNumber(row.get("phone_number", String.class));
+        user.setVersion(row.get("version", Long.class));
+        return user;
+    }
+
+    /**
+     * Same wall-clock interpretation as {@code java.sql.Timestamp} on the JDBC side.
+     */
+    private static LocalDateTime toLocalDateTime(Date date) {
+        return date==null ? null : new Timestamp(date.getTime()).toLocalDateTime();
+    }
+}
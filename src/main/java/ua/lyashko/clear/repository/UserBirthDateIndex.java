@@ -0,0 +1,187 @@
+package ua.lyashko.clear.repository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process secondary index over {@code users.birth_date}: birth instants in epoch millis mapped to
+ * the sorted ids born at that instant. Loaded once at startup and kept current by {@code UserService};
+ * writes that bypass the service (the reactive stack, manual SQL) are not seen until the next restart.
+ * Users without a birth date are not indexed.
+ * <p>
+ * Readers never block. Writers are serialized so the forward map and the id lookup stay in step.
+ */
+@Component
+@DependsOnDatabaseInitialization
+@ConditionalOnProperty(name = "user.birth-date-index.enabled", havingValue = "true")
+public class UserBirthDateIndex {
+    // no range matches a user without a birth date, such rows are left out
+    private static final String LOAD = "SELECT id, birth_date FROM users WHERE birth_date IS NOT NULL " +
+            "ORDER BY birth_date, id";
+
+    // rough 64-bit sizes with compressed oops, good enough for a footprint gauge
+    private static final long KEY_ENTRY_BYTES = 24 + 16 + 16 + 12;
+    private static final long ID_ENTRY_BYTES = 8 + 32 + 16 + 16 + 8;
+
+    private final ConcurrentSkipListMap<Long, long[]> idsByBirthDate = new ConcurrentSkipListMap<>();
+    private final Map<Long, Long> birthDateById = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+    private volatile long rebuildNanos;
+
+    @Autowired
+    public UserBirthDateIndex(DataSource dataSource,
+                              @Value("${user.stream.fetch-size}") int fetchSize,
+                              MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        Gauge.builder("user.birth-date-index.size", birthDateById, Map::size)
+                .description("Users held by the birth date index")
+                .register(meterRegistry);
+        Gauge.builder("user.birth-date-index.memory", this, UserBirthDateIndex::estimatedBytes)
+                .description("Estimated heap used by the birth date index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        TimeGauge.builder("user.birth-date-index.rebuild", this, TimeUnit.NANOSECONDS, index -> index.rebuildNanos)
+                .description("Time the last full rebuild of the birth date index took")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reloads the whole index from the table.
+     */
+    @PostConstruct
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        idsByBirthDate.clear();
+        birthDateById.clear();
+        Loader loader = new Loader();
+        jdbcTemplate.query(LOAD, loader);
+        if (loader.runSize > 0) {
+            loader.flush();
+        }
+        rebuildNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Ids of users born between {@code from} and {@code to}, both inclusive, ordered by birth date and id.
+     */
+    public long[] findIdsByBirthDateBetween(Date from, Date to) {
+        Map<Long, long[]> range = idsByBirthDate.subMap(from.getTime(), true, to.getTime(), true);
+        long[] ids = new long[16];
+        int size = 0;
+        for (long[] group : range.values()) {
+            if (size + group.length > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2, size + group.length));
+            }
+            System.arraycopy(group, 0, ids, size, group.length);
+            size += group.length;
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    public synchronized void put(long id, Date birthDate) {
+        if (birthDate == null) {
+            remove(id);
+            return;
+        }
+        long key = birthDate.getTime();
+        Long previous = birthDateById.put(id, key);
+        if (previous != null) {
+            if (previous == key) {
+                return;
+            }
+            detach(previous, id);
+        }
+        idsByBirthDate.compute(key, (k, ids) -> {
+            if (ids == null) {
+                return new long[]{id};
+            }
+            int at = -Arrays.binarySearch(ids, id) - 1;
+            long[] grown = new long[ids.length + 1];
+            System.arraycopy(ids, 0, grown, 0, at);
+            grown[at] = id;
+            System.arraycopy(ids, at, grown, at + 1, ids.length - at);
+            return grown;
+        });
+    }
+
+    public synchronized void remove(long id) {
+        Long previous = birthDateById.remove(id);
+        if (previous != null) {
+            detach(previous, id);
+        }
+    }
+
+    public int size() {
+        return birthDateById.size();
+    }
+
+    public long estimatedBytes() {
+        return idsByBirthDate.size() * KEY_ENTRY_BYTES + birthDateById.size() * ID_ENTRY_BYTES;
+    }
+
+    private void detach(long key, long id) {
+        idsByBirthDate.computeIfPresent(key, (k, ids) -> {
+            int at = Arrays.binarySearch(ids, id);
+            if (at < 0) {
+                return ids;
+            }
+            if (ids.length == 1) {
+                return null;
+            }
+            long[] shrunk = new long[ids.length - 1];
+            System.arraycopy(ids, 0, shrunk, 0, at);
+            System.arraycopy(ids, at + 1, shrunk, at, ids.length - at - 1);
+            return shrunk;
+        });
+    }
+
+    /**
+     * Rows arrive sorted by birth date and id, so ids sharing a birth instant are collected into
+     * one array before touching the map.
+     */
+    private class Loader implements RowCallbackHandler {
+        private long[] run = new long[16];
+        private int runSize;
+        private long runKey;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long id = rs.getLong(1);
+            long key = rs.getTimestamp(2).getTime();
+            if (runSize > 0 && key != runKey) {
+                flush();
+            }
+            runKey = key;
+            if (runSize == run.length) {
+                run = Arrays.copyOf(run, runSize * 2);
+            }
+            run[runSize++] = id;
+            birthDateById.put(id, key);
+        }
+
+        private void flush() {
+            idsByBirthDate.put(runKey, Arrays.copyOf(run, runSize));
+            runSize = 0;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package ua.lyashko.clear.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * Bloom filter over the normalized emails of all users, so creating a user with a new email does not
+ * need a lookup first. A miss is certain; a hit is confirmed against the table, and the unique index on
+ * {@code users.email_normalized} stays the final word for races the filter cannot see.
+ * <p>
+ * Bits are set with lock-free CAS and never cleared. Emails that leave the table through deletes or
+ * updates are only counted; once they make up a quarter of the entries the filter is rebuilt from the
+ * table in the background. Writes that bypass {@code UserService} are picked up by the next rebuild.
+ */
+@Component
+@DependsOnDatabaseInitialization
+@ConditionalOnProperty(name = "user.email-filter.enabled", havingValue = "true")
+public class UserEmailFilter {
+    private static final String COUNT = "SELECT COUNT(*) FROM users";
+    private static final String LOAD = "SELECT email_normalized FROM users WHERE email_normalized IS NOT NULL";
+    private static final int MIN_STALE_FOR_REBUILD = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long expectedEmails;
+    private final double falsePositiveRate;
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private final Counter absent;
+    private final Counter duplicates;
+    private final Counter falsePositives;
+    private volatile Bits bits;
+    // set while a rebuild scans the table, so emails added meanwhile are not lost with the swap
+    private volatile Bits rebuilding;
+    private volatile long rebuildNanos;
+
+    @Autowired
+    public UserEmailFilter(DataSource dataSource,
+                           @Value("${user.stream.fetch-size}") int fetchSize,
+                           @Value("${user.email-filter.expected-emails}") long expectedEmails,
+                           @Value("${user.email-filter.false-positive-rate}") double falsePositiveRate,
+                           MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.expectedEmails = expectedEmails;
+        this.falsePositiveRate = falsePositiveRate;
+        this.bits = new Bits(expectedEmails, falsePositiveRate);
+        this.absent = checks(meterRegistry, "absent");
+        this.duplicates = checks(meterRegistry, "duplicate");
+        this.falsePositives = checks(meterRegistry, "false_positive");
+        Gauge.builder("user.email-filter.size", entries, AtomicLong::get)
+                .description("Emails added to the email filter since its last rebuild")
+                .register(meterRegistry);
+        Gauge.builder("user.email-filter.stale", stale, AtomicLong::get)
+                .description("Emails removed from the table but still set in the email filter")
+                .register(meterRegistry);
+        Gauge.builder("user.email-filter.memory", this, filter -> filter.bits.words.length() * 8.0)
+                .description("Heap used by the email filter bits")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("user.email-filter.expected-false-positive-rate", this, UserEmailFilter::expectedFalsePositiveRate)
+                .description("False positive rate expected from the current fill of the email filter")
+                .register(meterRegistry);
+        TimeGauge.builder("user.email-filter.rebuild", this, TimeUnit.NANOSECONDS, filter -> filter.rebuildNanos)
+                .description("Time the last full rebuild of the email filter took")
+                .register(meterRegistry);
+    }
+
+    public static String normalize(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reloads the filter from the table, sized for at least twice the current number of users.
+     */
+    @PostConstruct
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        Long rows = jdbcTemplate.queryForObject(COUNT, Long.class);
+        Bits fresh = new Bits(Math.max(expectedEmails, 2 * rows), falsePositiveRate);
+        rebuilding = fresh;
+        long[] loaded = new long[1];
+        jdbcTemplate.query(LOAD, rs -> {
+            fresh.add(rs.getString(1));
+            loaded[0]++;
+        });
+        bits = fresh;
+        rebuilding = null;
+        entries.set(loaded[0]);
+        stale.set(0);
+        rebuildNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Whether a user already has this email. Only emails that hit the filter are passed on to
+     * {@code lookup}, normalized, to tell a real duplicate from a false positive.
+     */
+    public boolean contains(String email, Predicate<String> lookup) {
+        String normalized = normalize(email);
+        if (normalized == null || !bits.mightContain(normalized)) {
+            absent.increment();
+            return false;
+        }
+        if (lookup.test(normalized)) {
+            duplicates.increment();
+            return true;
+        }
+        falsePositives.increment();
+        return false;
+    }
+
+    /**
+     * Records an email that is now in the table. Call after the write is committed.
+     */
+    public void add(String email) {
+        String normalized = normalize(email);
+        if (normalized == null) {
+            return;
+        }
+        bits.add(normalized);
+        Bits next = rebuilding;
+        if (next != null) {
+            next.add(normalized);
+        }
+        entries.incrementAndGet();
+    }
+
+    /**
+     * Records that an email has left the table, by a delete or by an update that may have replaced it.
+     */
+    public void removed() {
+        long removed = stale.incrementAndGet();
+        if (removed >= MIN_STALE_FOR_REBUILD && removed * 4 >= entries.get()
+                && rebuildPending.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    rebuild();
+                } finally {
+                    rebuildPending.set(false);
+                }
+            });
+        }
+    }
+
+    public double expectedFalsePositiveRate() {
+        Bits current = bits;
+        double fill = 1 - Math.exp(-(double) current.hashCount * entries.get() / current.bitCount);
+        return Math.pow(fill, current.hashCount);
+    }
+
+    private static Counter checks(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("user.email-filter.checks")
+                .description("Duplicate email checks by outcome; false_positive ones cost a lookup for nothing")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Fixed-size bit set with k probes derived from one 64-bit hash (Kirsch and Mitzenmacher).
+     */
+    private static final class Bits {
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashCount;
+
+        private Bits(long capacity, double falsePositiveRate) {
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+            this.words = new AtomicLongArray(wordCount);
+            this.bitCount = wordCount * 64L;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        private void add(String normalized) {
+            long h1 = hash(normalized);
+            long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                // skip the write when already set, hot emails must not make the cache line bounce
+                if ((words.get(word) & mask) == 0) {
+                    words.accumulateAndGet(word, mask, (current, set) -> current | set);
+                }
+            }
+        }
+
+        private boolean mightContain(String normalized) {
+            long h1 = hash(normalized);
+            long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // FNV-1a over the chars, finished with the murmur3 mixer so every bit depends on the whole email
+        private static long hash(String value) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                h ^= value.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return mix(h);
+        }
+
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ua.lyashko.clear.repository;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import ua.lyashko.clear.dto.UserExportFormat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Copies {@link UserRowMapper#COLUMNS} rows straight from the result set to the writer, so an export
+ * never builds a {@code User}. Field names follow the JSON API; birth dates are written as ISO-8601 instants.
+ */
+class UserExportWriter implements RowCallbackHandler {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String CSV_HEADER = "id,email,firstName,lastName,birthDate,address,phoneNumber,version\n";
+
+    private final UserExportFormat format;
+    private final Writer out;
+    private final JsonGenerator generator;
+
+    UserExportWriter(UserExportFormat format, Writer out) {
+        this.format = format;
+        this.out = out;
+        try {
+            if (format == UserExportFormat.CSV) {
+                out.write(CSV_HEADER);
+                generator = null;
+            } else {
+                generator = JSON_FACTORY.createGenerator(out);
+                generator.setRootValueSeparator(null);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        try {
+            if (format == UserExportFormat.CSV) {
+                writeCsv(rs);
+            } else {
+                writeJson(rs);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes whatever the JSON generator still buffers; the writer itself is left open.
+     */
+    void finish() {
+        if (generator != null) {
+            try {
+                generator.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void writeCsv(ResultSet rs) throws SQLException, IOException {
+        out.write(Long.toString(rs.getLong(1)));
+        for (int column = 2; column <= 7; column++) {
+            out.write(',');
+            if (column == 5) {
+                Timestamp birthDate = rs.getTimestamp(column);
+                if (birthDate != null) {
+                    out.write(birthDate.toInstant().toString());
+                }
+            } else {
+                writeCsvField(rs.getString(column));
+            }
+        }
+        out.write(',');
+        out.write(Long.toString(rs.getLong(8)));
+        out.write('\n');
+    }
+
+    // RFC 4180: quote only when needed, doubling embedded quotes
+    private void writeCsvField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private void writeJson(ResultSet rs) throws SQLException, IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", rs.getLong(1));
+        generator.writeStringField("email", rs.getString(2));
+        generator.writeStringField("firstName", rs.getString(3));
+        generator.writeStringField("lastName", rs.getString(4));
+        Timestamp birthDate = rs.getTimestamp(5);
+        generator.writeStringField("birthDate", birthDate == null ? null : birthDate.toInstant().toString());
+        generator.writeStringField("address", rs.getString(6));
+        generator.writeStringField("phoneNumber", rs.getString(7));
+        generator.writeNumberField("version", rs.getLong(8));
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+}
@@ -1,11 +1,61 @@
 package ua.lyashko.clear.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import ua.lyashko.clear.entity.User;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
-public interface UserRepository extends CrudRepository<User, Long> {
+import static ua.lyashko.clear.config.UserCacheConfig.USERS_BY_ID;
+import static ua.lyashko.clear.config.UserCacheConfig.USER_EXISTS;
+
+public interface UserRepository extends CrudRepository<User, Long>, UserRepositoryCustom {
+
+    // misses are not cached, a user created later under that id must not be hidden
+    @Override
+    @Cacheable(cacheNames = USERS_BY_ID, key = "#p0", unless = "#result == null")
+    Optional<User> findById(Long id);
+
+    @Override
+    @Cacheable(cacheNames = USER_EXISTS, key = "#p0", unless = "!#result")
+    boolean existsById(Long id);
+
+    @Override
+    @CachePut(cacheNames = USERS_BY_ID, key = "#result.id")
+    <S extends User> S save(S user);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_BY_ID, key = "#p0"),
+            @CacheEvict(cacheNames = USER_EXISTS, key = "#p0")
+    })
+    void deleteById(Long id);
+
+    // search results are never modified, read-only entities skip Hibernate's snapshot and dirty check
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
     List<User> findByBirthDateBetween(Date from, Date to);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<User> findByBirthDateBetweenOrderByBirthDateAscIdAsc(Date from, Date to, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("select u from User u where u.birthDate between :from and :to " +
+            "and (u.birthDate > :afterBirthDate or (u.birthDate = :afterBirthDate and u.id > :afterId)) " +
+            "order by u.birthDate, u.id")
+    List<User> findByBirthDateBetweenAfter(@Param("from") Date from,
+                                           @Param("to") Date to,
+                                           @Param("afterBirthDate") Date afterBirthDate,
+                                           @Param("afterId") Long afterId,
+                                           Pageable pageable);
 }
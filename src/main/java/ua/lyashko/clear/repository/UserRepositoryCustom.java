@@ -0,0 +1,119 @@
+package ua.lyashko.clear.repository;
+
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Caching;
+import ua.lyashko.clear.dto.UserExportFormat;
+import ua.lyashko.clear.dto.UserField;
+import ua.lyashko.clear.entity.User;
+
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static ua.lyashko.clear.config.UserCacheConfig.USERS_BY_ID;
+import static ua.lyashko.clear.config.UserCacheConfig.USER_EXISTS;
+
+public interface UserRepositoryCustom {
+
+    /**
+     * Reads matching users through a forward-only JDBC cursor and hands each row to the consumer
+     * as soon as it is read, so no result list is ever materialized.
+     */
+    void streamByBirthDateBetween(Date from, Date to, Consumer<User> consumer);
+
+    /**
+     * Reads only the selected columns of the users born in the range, ordered by birth date and id, into
+     * one map per user keyed by property name. No entity is created, so nothing enters a persistence context.
+     */
+    List<Map<String, Object>> findFieldsByBirthDateBetween(Date from, Date to, List<UserField> fields);
+
+    /**
+     * Writes every user born in the range, in id order, to {@code out} in the given format. Either bound
+     * may be null to leave that side open. Rows go from a forward-only cursor straight to the writer.
+     */
+    void exportByBirthDateBetween(Date from, Date to, UserExportFormat format, Writer out);
+
+    /**
+     * Loads the users with the given ids by primary key, in chunks of {@code user.batch.size}, keeping
+     * the order of the ids as long as they are sorted by birth date and id. Unknown ids are skipped.
+     */
+    List<User> findAllByIdInOrder(long[] ids);
+
+    /**
+     * Whether a user has this email, compared in the normalized form held by {@code users.email_normalized}
+     * (trimmed, lower case), which is what the unique index enforces.
+     */
+    boolean existsByNormalizedEmail(String normalizedEmail);
+
+    /**
+     * Persists all users in one transaction, letting Hibernate group the INSERTs into JDBC batches.
+     */
+    List<User> insertAll(List<User> users);
+
+    /**
+     * Overwrites every field of the user, nulls included, and bumps its version in one transaction.
+     * Returns the row as it is after the update, or empty if there is no user with that id. The cached
+     * user is dropped first, so a failed write leaves no entry behind that the database no longer backs.
+     */
+    @Caching(evict = @CacheEvict(cacheNames = USERS_BY_ID, key = "#p0", beforeInvocation = true),
+            put = @CachePut(cacheNames = USERS_BY_ID, key = "#p0", unless = "#result == null"))
+    Optional<User> replaceById(Long id, User user);
+
+    /**
+     * Like {@link #replaceById}, but only writes the fields that are not null.
+     */
+    @Caching(evict = @CacheEvict(cacheNames = USERS_BY_ID, key = "#p0", beforeInvocation = true),
+            put = @CachePut(cacheNames = USERS_BY_ID, key = "#p0", unless = "#result == null"))
+    Optional<User> patchById(Long id, User user);
+
+    /**
+     * {@link #replaceById} that only applies while the row is still at {@code version}; empty if the id
+     * is unknown or the row has moved on.
+     */
+    @Caching(evict = @CacheEvict(cacheNames = USERS_BY_ID, key = "#p0", beforeInvocation = true),
+            put = @CachePut(cacheNames = USERS_BY_ID, key = "#p0", unless = "#result == null"))
+    Optional<User> replaceByIdAndVersion(Long id, Long version, User user);
+
+    /**
+     * {@link #patchById} that only applies while the row is still at {@code version}.
+     */
+    @Caching(evict = @CacheEvict(cacheNames = USERS_BY_ID, key = "#p0", beforeInvocation = true),
+            put = @CachePut(cacheNames = USERS_BY_ID, key = "#p0", unless = "#result == null"))
+    Optional<User> patchByIdAndVersion(Long id, Long version, User user);
+
+    /**
+     * Applies the non-null fields of the patch to every listed user and bumps their versions, one UPDATE
+     * per chunk of {@code user.batch.size} ids, all in one transaction: a conflict in any chunk leaves
+     * every user as it was. Returns the updated rows; unknown ids are skipped.
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_BY_ID, allEntries = true, beforeInvocation = true),
+            @CacheEvict(cacheNames = USERS_BY_ID, allEntries = true),
+            @CacheEvict(cacheNames = USER_EXISTS, allEntries = true)
+    })
+    List<User> bulkPatchById(List<Long> ids, User patch);
+
+    /**
+     * Deletes the listed users with one DELETE per chunk of {@code user.batch.size} ids and returns
+     * the ids that were actually deleted. Each chunk commits on its own.
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_BY_ID, allEntries = true),
+            @CacheEvict(cacheNames = USER_EXISTS, allEntries = true)
+    })
+    List<Long> bulkDeleteById(List<Long> ids);
+
+    /**
+     * Deletes every user born between the two dates, {@code user.batch.size} rows per statement so
+     * a large purge never holds one long transaction. Returns the deleted ids.
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = USERS_BY_ID, allEntries = true),
+            @CacheEvict(cacheNames = USER_EXISTS, allEntries = true)
+    })
+    List<Long> bulkDeleteByBirthDateBetween(Date from, Date to);
+}
@@ -0,0 +1,222 @@
+package ua.lyashko.clear.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.annotation.Transactional;
+import ua.lyashko.clear.dto.UserExportFormat;
+import ua.lyashko.clear.dto.UserField;
+import ua.lyashko.clear.entity.User;
+
+import javax.sql.DataSource;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+public class UserRepositoryImpl implements UserRepositoryCustom {
+    private static final String STREAM_BY_BIRTH_DATE = "SELECT " + UserRowMapper.COLUMNS +
+            " FROM users WHERE birth_date BETWEEN ? AND ? ORDER BY birth_date, id";
+    private static final String FIND_ALL_BY_ID = "SELECT " + UserRowMapper.COLUMNS +
+            " FROM users WHERE id = ANY(?) ORDER BY birth_date, id";
+    private static final String FIND_BY_ID = "SELECT " + UserRowMapper.COLUMNS + " FROM users WHERE id = ?";
+    private static final String EXISTS_BY_NORMALIZED_EMAIL =
+            "SELECT EXISTS (SELECT 1 FROM users WHERE email_normalized = ?)";
+    private static final String DELETE_BY_IDS = "SELECT id FROM OLD TABLE (DELETE FROM users WHERE id = ANY(?))";
+    private static final String DELETE_BY_BIRTH_DATE = "SELECT id FROM OLD TABLE " +
+            "(DELETE FROM users WHERE birth_date BETWEEN ? AND ? FETCH FIRST ? ROWS ONLY)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final int batchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public UserRepositoryImpl(DataSource dataSource,
+                              @Value("${user.stream.fetch-size}") int fetchSize,
+                              @Value("${user.batch.size}") int batchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(fetchSize);
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void streamByBirthDateBetween(Date from, Date to, Consumer<User> consumer) {
+        RowCallbackHandler handler = rs -> consumer.accept(UserRowMapper.INSTANCE.mapRow(rs, rs.getRow()));
+        streamingJdbcTemplate.query(STREAM_BY_BIRTH_DATE, handler, from, to);
+    }
+
+    @Override
+    public List<Map<String, Object>> findFieldsByBirthDateBetween(Date from, Date to, List<UserField> fields) {
+        // columns come from the UserField whitelist, never from the request
+        String sql = fields.stream().map(UserField::column).collect(Collectors.joining(", ", "SELECT ",
+                " FROM users WHERE birth_date BETWEEN ? AND ? ORDER BY birth_date, id"));
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Map<String, Object> row = new LinkedHashMap<>(fields.size() * 2);
+            for (int i = 0; i < fields.size(); i++) {
+                UserField field = fields.get(i);
+                row.put(field.property(), field == UserField.BIRTH_DATE ? rs.getTimestamp(i + 1) : rs.getObject(i + 1));
+            }
+            return row;
+        }, from, to);
+    }
+
+    @Override
+    public void exportByBirthDateBetween(Date from, Date to, UserExportFormat format, Writer out) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(UserRowMapper.COLUMNS).append(" FROM users");
+        List<Object> args = new ArrayList<>(2);
+        if (from != null) {
+            sql.append(" WHERE birth_date >= ?");
+            args.add(from);
+        }
+        if (to != null) {
+            sql.append(from == null ? " WHERE" : " AND").append(" birth_date <= ?");
+            args.add(to);
+        }
+        sql.append(" ORDER BY id");
+        UserExportWriter writer = new UserExportWriter(format, out);
+        streamingJdbcTemplate.query(sql.toString(), writer, args.toArray());
+        writer.finish();
+    }
+
+    @Override
+    public boolean existsByNormalizedEmail(String normalizedEmail) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(EXISTS_BY_NORMALIZED_EMAIL, Boolean.class, normalizedEmail));
+    }
+
+    @Override
+    public List<User> findAllByIdInOrder(long[] ids) {
+        List<User> users = new ArrayList<>(ids.length);
+        for (int from = 0; from < ids.length; from += batchSize) {
+            int to = Math.min(from + batchSize, ids.length);
+            Long[] chunk = new Long[to - from];
+            for (int i = from; i < to; i++) {
+                chunk[i - from] = ids[i];
+            }
+            users.addAll(jdbcTemplate.query(FIND_ALL_BY_ID, UserRowMapper.INSTANCE, (Object) chunk));
+        }
+        return users;
+    }
+
+    @Override
+    @Transactional
+    public List<User> insertAll(List<User> users) {
+        for (int i = 0; i < users.size(); i++) {
+            entityManager.persist(users.get(i));
+            // keep the persistence context from growing with the import
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return users;
+    }
+
+    @Override
+    @Transactional
+    public Optional<User> replaceById(Long id, User user) {
+        return update("id = ?", new Object[]{id}, FIND_BY_ID, user, false).stream().findFirst();
+    }
+
+    @Override
+    @Transactional
+    public Optional<User> patchById(Long id, User user) {
+        return update("id = ?", new Object[]{id}, FIND_BY_ID, user, true).stream().findFirst();
+    }
+
+    @Override
+    @Transactional
+    public Optional<User> replaceByIdAndVersion(Long id, Long version, User user) {
+        return update("id = ? AND version = ?", new Object[]{id, version}, FIND_BY_ID, user, false).stream().findFirst();
+    }
+
+    @Override
+    @Transactional
+    public Optional<User> patchByIdAndVersion(Long id, Long version, User user) {
+        return update("id = ? AND version = ?", new Object[]{id, version}, FIND_BY_ID, user, true).stream().findFirst();
+    }
+
+    @Override
+    @Transactional
+    public List<User> bulkPatchById(List<Long> ids, User patch) {
+        List<User> users = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            Long[] chunk = ids.subList(from, Math.min(from + batchSize, ids.size())).toArray(new Long[0]);
+            users.addAll(update("id = ANY(?)", new Object[]{chunk}, FIND_ALL_BY_ID, patch, true));
+        }
+        return users;
+    }
+
+    @Override
+    public List<Long> bulkDeleteById(List<Long> ids) {
+        List<Long> deletedIds = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            Long[] chunk = ids.subList(from, Math.min(from + batchSize, ids.size())).toArray(new Long[0]);
+            deletedIds.addAll(jdbcTemplate.queryForList(DELETE_BY_IDS, Long.class, (Object) chunk));
+        }
+        return deletedIds;
+    }
+
+    @Override
+    public List<Long> bulkDeleteByBirthDateBetween(Date from, Date to) {
+        List<Long> deletedIds = new ArrayList<>();
+        List<Long> chunk;
+        do {
+            chunk = jdbcTemplate.queryForList(DELETE_BY_BIRTH_DATE, Long.class, from, to, batchSize);
+            deletedIds.addAll(chunk);
+        } while (chunk.size() == batchSize);
+        return deletedIds;
+    }
+
+    /**
+     * Runs the UPDATE and then {@code reread}, which selects the rows by the id or ids in {@code keys[0]}.
+     * Callers hold a transaction, so the read sees exactly this write and a failed UPDATE rolls back as a
+     * whole. H2's FINAL TABLE would save the second round trip, but when its UPDATE violates the unique
+     * email index H2 2.1 deletes the row instead of leaving it alone.
+     */
+    private List<User> update(String where, Object[] keys, String reread, User user, boolean skipNulls) {
+        List<String> assignments = new ArrayList<>(7);
+        List<Object> args = new ArrayList<>(8);
+        assign(assignments, args, "email", user.getEmail(), skipNulls);
+        assign(assignments, args, "first_name", user.getFirstName(), skipNulls);
+        assign(assignments, args, "last_name", user.getLastName(), skipNulls);
+        assign(assignments, args, "birth_date", user.getBirthDate(), skipNulls);
+        assign(assignments, args, "address", user.getAddress(), skipNulls);
+        assign(assignments, args, "phone_number", user.getPhoneNumber(), skipNulls);
+        if (assignments.isEmpty()) {
+            // nothing to change, do not bump the version either
+            return jdbcTemplate.query("SELECT " + UserRowMapper.COLUMNS + " FROM users WHERE " + where,
+                    UserRowMapper.INSTANCE, keys);
+        }
+        assignments.add("version = version + 1");
+        args.addAll(Arrays.asList(keys));
+        int updated = jdbcTemplate.update("UPDATE users SET " + String.join(", ", assignments) + " WHERE " + where,
+                args.toArray());
+        if (updated == 0) {
+            return List.of();
+        }
+        return jdbcTemplate.query(reread, UserRowMapper.INSTANCE, keys[0]);
+    }
+
+    private void assign(List<String> assignments, List<Object> args, String column, Object value, boolean skipNulls) {
+        if (value==null && skipNulls) {
+            return;
+        }
+        assignments.add(column + " = ?");
+        args.add(value);
+    }
+}
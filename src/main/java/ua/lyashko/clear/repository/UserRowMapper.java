@@ -0,0 +1,27 @@
+package ua.lyashko.clear.repository;
+
+import org.springframework.jdbc.core.RowMapper;
+import ua.lyashko.clear.entity.User;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+class UserRowMapper implements RowMapper<User> {
+    static final UserRowMapper INSTANCE = new UserRowMapper();
+
+    static final String COLUMNS = "id, email, first_name, last_name, birth_date, address, phone_number, version";
+
+    @Override
+    public User mapRow(ResultSet rs, int rowNum) throws SQLException {
+        User user = new User();
+        user.setId(rs.getLong("id"));
+        user.setEmail(rs.getString("email"));
+        user.setFirstName(rs.getString("first_name"));
+        user.setLastName(rs.getString("last_name"));
+        user.setBirthDate(rs.getTimestamp("birth_date"));
+        user.setAddress(rs.getString("address"));
+        user.setPhoneNumber(rs.getString("phone_number"));
+        user.setVersion(rs.getLong("version"));
+        return user;
+    }
+}
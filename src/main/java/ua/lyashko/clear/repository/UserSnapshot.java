@@ -0,0 +1,534 @@
+package ua.lyashko.clear.repository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ua.lyashko.clear.dto.UserHistogram;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only columnar copy of the users table for aggregate queries: ids, birth dates as UTC epoch days,
+ * dictionary codes of the addresses and the {@code change_seq} each row was read at, each in its own
+ * direct buffer outside the heap. Aggregations scan
+ * the columns by index and create no object per row.
+ * <p>
+ * Refreshed every {@code user.snapshot.refresh-interval} from the rows whose {@code change_seq} is above
+ * the highest one already seen. That misses deletes, and rows written by a transaction that committed
+ * long after it took its {@code change_seq} values, so the row count, the id sum and the
+ * {@code change_seq} sum are compared as well. Only when they disagree is the {@code change_seq} of every
+ * row read, and the rows whose value differs from the snapshot's are loaded.
+ * A refresh merges into new buffers and publishes them at once; readers keep whatever snapshot they
+ * started with. The address dictionary only grows, it is reset by a restart.
+ */
+@Component
+@DependsOnDatabaseInitialization
+@ConditionalOnProperty(name = "user.snapshot.enabled", havingValue = "true")
+public class UserSnapshot {
+    private static final Logger log = LoggerFactory.getLogger(UserSnapshot.class);
+
+    static final int NO_BIRTH_DATE = Integer.MIN_VALUE;
+    static final int NO_ADDRESS = -1;
+    private static final int UNKNOWN_ADDRESS = -2;
+    private static final int MAX_AGE = 150;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    // change_seq values are taken at write time, not at commit, so re-read a margin below the watermark
+    private static final long CHANGE_SEQ_OVERLAP = 1000;
+    private static final String CHANGED = "SELECT id, birth_date, address, change_seq FROM users " +
+            "WHERE change_seq > ? ORDER BY id";
+    private static final String CHECKSUM = "SELECT COUNT(*), COALESCE(SUM(id), 0), COALESCE(SUM(change_seq), 0) FROM users";
+    private static final String IDS = "SELECT id, change_seq FROM users ORDER BY id";
+    private static final String BY_IDS = "SELECT id, birth_date, address, change_seq FROM users " +
+            "WHERE id = ANY(?) ORDER BY id";
+    private static final int IDS_PER_QUERY = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration refreshInterval;
+    private final Map<String, Integer> addressCodes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "user-snapshot-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Columns columns = new Columns(0);
+    private volatile Instant refreshedAt = Instant.now();
+    private volatile long refreshNanos;
+    private long watermark = Long.MIN_VALUE;
+
+    @Autowired
+    public UserSnapshot(DataSource dataSource,
+                        @Value("${user.stream.fetch-size}") int fetchSize,
+                        @Value("${user.snapshot.refresh-interval}") Duration refreshInterval,
+                        MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.refreshInterval = refreshInterval;
+        Gauge.builder("user.snapshot.rows", this, snapshot -> snapshot.columns.size)
+                .description("Users held by the columnar snapshot")
+                .register(meterRegistry);
+        Gauge.builder("user.snapshot.memory", this, snapshot -> snapshot.columns.bytes())
+                .description("Direct memory used by the columns of the snapshot")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("user.snapshot.dictionary.size", addressCodes, Map::size)
+                .description("Distinct addresses in the snapshot dictionary")
+                .register(meterRegistry);
+        TimeGauge.builder("user.snapshot.refresh", this, TimeUnit.NANOSECONDS, snapshot -> snapshot.refreshNanos)
+                .description("Time the last refresh of the snapshot took")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        refresh();
+        long interval = refreshInterval.toMillis();
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                log.warn("Refreshing the user snapshot failed, keeping the previous one", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Brings the snapshot up to date with the table.
+     */
+    public synchronized void refresh() {
+        long start = System.nanoTime();
+        Columns current = columns;
+        Changes changes = new Changes();
+        jdbcTemplate.query(CHANGED, changes, watermark == Long.MIN_VALUE ? Long.MIN_VALUE : watermark - CHANGE_SEQ_OVERLAP);
+        int added = 0;
+        long addedSum = 0;
+        long changeSeqSum = current.changeSeqSum;
+        boolean rewrite = false;
+        for (int i = 0; i < changes.size; i++) {
+            int at = current.indexOf(changes.ids[i]);
+            if (at < 0) {
+                added++;
+                addedSum += changes.ids[i];
+                changeSeqSum += changes.changeSeqs[i];
+                rewrite = true;
+            } else {
+                changeSeqSum += changes.changeSeqs[i] - current.changeSeqs.get(at);
+                rewrite |= current.birthDays.get(at) != changes.birthDays[i]
+                        || current.addressCodes.get(at) != changes.addressCodes[i];
+            }
+        }
+        long[] checksum = jdbcTemplate.queryForObject(CHECKSUM,
+                (rs, row) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)});
+        long[] liveIds = null;
+        if (checksum[0] != current.size + added || checksum[1] != current.idSum + addedSum
+                || checksum[2] != changeSeqSum) {
+            Rows live = new Rows((int) checksum[0]);
+            jdbcTemplate.query(IDS, live);
+            liveIds = Arrays.copyOf(live.ids, live.size);
+            changes = changes.overriddenBy(load(live.idsNotMatching(current, changes)));
+            rewrite = true;
+        }
+        if (rewrite) {
+            columns = merge(current, changes, liveIds);
+        } else {
+            // only change_seq moved, by writes to other columns; readers never look at it
+            for (int i = 0; i < changes.size; i++) {
+                current.setChangeSeq(current.indexOf(changes.ids[i]), changes.changeSeqs[i]);
+            }
+        }
+        watermark = Math.max(watermark, changes.maxChangeSeq);
+        refreshedAt = Instant.now();
+        refreshNanos = System.nanoTime() - start;
+    }
+
+    private Changes load(long[] ids) {
+        Changes rows = new Changes();
+        for (int from = 0; from < ids.length; from += IDS_PER_QUERY) {
+            Long[] chunk = new Long[Math.min(IDS_PER_QUERY, ids.length - from)];
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = ids[from + i];
+            }
+            jdbcTemplate.query(BY_IDS, rows, (Object) chunk);
+        }
+        return rows;
+    }
+
+    public int size() {
+        return columns.size;
+    }
+
+    public Instant refreshedAt() {
+        return refreshedAt;
+    }
+
+    /**
+     * Counts the users of the snapshot, optionally only those at {@code address}, by age in completed
+     * years or by birth year, in buckets {@code width} years wide.
+     */
+    public UserHistogram histogram(UserHistogram.Dimension by, int width, String address) {
+        Columns snapshot = columns;
+        Instant asOf = refreshedAt;
+        int addressCode = address == null ? NO_ADDRESS : addressCodes.getOrDefault(address, UNKNOWN_ADDRESS);
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        // ascending epoch days; the number of bounds at or before a birth day identifies its age or year
+        int[] bounds;
+        int firstValue;
+        if (by == UserHistogram.Dimension.AGE) {
+            bounds = new int[MAX_AGE + 1];
+            for (int age = 0; age <= MAX_AGE; age++) {
+                // the first birth day that is too recent for this age, as in UserEligibility
+                bounds[MAX_AGE - age] = (int) today.minusYears(age).plusDays(1).toEpochDay();
+            }
+            firstValue = MAX_AGE;
+        } else {
+            boolean anyBirthDate = snapshot.minBirthDay <= snapshot.maxBirthDay;
+            int firstYear = anyBirthDate ? LocalDate.ofEpochDay(snapshot.minBirthDay).getYear() : today.getYear();
+            int lastYear = anyBirthDate ? LocalDate.ofEpochDay(snapshot.maxBirthDay).getYear() : today.getYear();
+            bounds = new int[lastYear - firstYear];
+            for (int year = firstYear + 1; year <= lastYear; year++) {
+                bounds[year - firstYear - 1] = (int) LocalDate.of(year, 1, 1).toEpochDay();
+            }
+            firstValue = firstYear;
+        }
+        long[] counts = new long[bounds.length + 1];
+        long total = 0;
+        long unknown = 0;
+        IntBuffer birthDays = snapshot.birthDays;
+        IntBuffer addresses = snapshot.addressCodes;
+        for (int i = 0; i < snapshot.size; i++) {
+            if (addressCode != NO_ADDRESS && addresses.get(i) != addressCode) {
+                continue;
+            }
+            total++;
+            int birthDay = birthDays.get(i);
+            if (birthDay == NO_BIRTH_DATE) {
+                unknown++;
+                continue;
+            }
+            counts[countAtOrBefore(bounds, birthDay)]++;
+        }
+        if (by == UserHistogram.Dimension.AGE) {
+            // born after today, no age yet
+            unknown += counts[bounds.length];
+            counts[bounds.length] = 0;
+        }
+        return new UserHistogram(by, width, total, unknown,
+                buckets(counts, by == UserHistogram.Dimension.AGE, firstValue, width), asOf);
+    }
+
+    private static List<UserHistogram.Bucket> buckets(long[] counts, boolean descending, int firstValue, int width) {
+        long[] byBucket = null;
+        int lowestBucket = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            int value = descending ? firstValue - i : firstValue + i;
+            int bucket = Math.floorDiv(value, width);
+            if (byBucket == null) {
+                // values span at most counts.length, so that many buckets below and above the first suffice
+                lowestBucket = bucket - counts.length;
+                byBucket = new long[2 * counts.length + 1];
+            }
+            byBucket[bucket - lowestBucket] += counts[i];
+        }
+        List<UserHistogram.Bucket> buckets = new ArrayList<>();
+        if (byBucket == null) {
+            return buckets;
+        }
+        int first = 0;
+        while (byBucket[first] == 0) {
+            first++;
+        }
+        int last = byBucket.length - 1;
+        while (byBucket[last] == 0) {
+            last--;
+        }
+        for (int i = first; i <= last; i++) {
+            int from = (lowestBucket + i) * width;
+            buckets.add(new UserHistogram.Bucket(from, from + width - 1, byBucket[i]));
+        }
+        return buckets;
+    }
+
+    private static int countAtOrBefore(int[] bounds, int day) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (bounds[middle] <= day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Merges the changed rows into the current columns, both sorted by id. With {@code liveIds} the
+     * result holds exactly those ids, which drops deleted users.
+     */
+    private Columns merge(Columns current, Changes changes, long[] liveIds) {
+        Columns next = new Columns(liveIds == null ? current.size + changes.size : liveIds.length);
+        int c = 0;
+        int k = 0;
+        if (liveIds == null) {
+            while (c < current.size || k < changes.size) {
+                long currentId = c < current.size ? current.ids.get(c) : Long.MAX_VALUE;
+                long changedId = k < changes.size ? changes.ids[k] : Long.MAX_VALUE;
+                if (changedId <= currentId) {
+                    next.append(changedId, changes.birthDays[k], changes.addressCodes[k], changes.changeSeqs[k]);
+                    k++;
+                    if (changedId == currentId) {
+                        c++;
+                    }
+                } else {
+                    next.append(currentId, current.birthDays.get(c), current.addressCodes.get(c), current.changeSeqs.get(c));
+                    c++;
+                }
+            }
+        } else {
+            for (long id : liveIds) {
+                while (c < current.size && current.ids.get(c) < id) {
+                    c++;
+                }
+                while (k < changes.size && changes.ids[k] < id) {
+                    k++;
+                }
+                if (k < changes.size && changes.ids[k] == id) {
+                    next.append(id, changes.birthDays[k], changes.addressCodes[k], changes.changeSeqs[k]);
+                } else if (c < current.size && current.ids.get(c) == id) {
+                    next.append(id, current.birthDays.get(c), current.addressCodes.get(c), current.changeSeqs.get(c));
+                }
+                // otherwise deleted before it could be loaded
+            }
+        }
+        return next;
+    }
+
+    private int addressCode(String address) {
+        if (address == null) {
+            return NO_ADDRESS;
+        }
+        // only the refresh thread adds codes, so the size is the next free one
+        return addressCodes.computeIfAbsent(address, value -> addressCodes.size());
+    }
+
+    private static final class Columns {
+        private final LongBuffer ids;
+        private final IntBuffer birthDays;
+        private final IntBuffer addressCodes;
+        // only refreshes read it, to tell which rows they have seen in their latest version
+        private final LongBuffer changeSeqs;
+        private int size;
+        private long idSum;
+        private long changeSeqSum;
+        private int minBirthDay = Integer.MAX_VALUE;
+        private int maxBirthDay = Integer.MIN_VALUE;
+
+        private Columns(int capacity) {
+            int rows = Math.max(1, capacity);
+            this.ids = ByteBuffer.allocateDirect(rows * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+            this.birthDays = ByteBuffer.allocateDirect(rows * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            this.addressCodes = ByteBuffer.allocateDirect(rows * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            this.changeSeqs = ByteBuffer.allocateDirect(rows * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+
+        private void append(long id, int birthDay, int addressCode, long changeSeq) {
+            ids.put(size, id);
+            birthDays.put(size, birthDay);
+            addressCodes.put(size, addressCode);
+            changeSeqs.put(size, changeSeq);
+            size++;
+            idSum += id;
+            changeSeqSum += changeSeq;
+            if (birthDay != NO_BIRTH_DATE) {
+                minBirthDay = Math.min(minBirthDay, birthDay);
+                maxBirthDay = Math.max(maxBirthDay, birthDay);
+            }
+        }
+
+        private void setChangeSeq(int at, long changeSeq) {
+            changeSeqSum += changeSeq - changeSeqs.get(at);
+            changeSeqs.put(at, changeSeq);
+        }
+
+        private int indexOf(long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long value = ids.get(middle);
+                if (value < id) {
+                    low = middle + 1;
+                } else if (value > id) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        private long bytes() {
+            return (long) ids.capacity() * Long.BYTES + (long) birthDays.capacity() * Integer.BYTES
+                    + (long) addressCodes.capacity() * Integer.BYTES + (long) changeSeqs.capacity() * Long.BYTES;
+        }
+    }
+
+    /**
+     * Changed rows in id order, in growable primitive arrays.
+     */
+    private class Changes implements RowCallbackHandler {
+        private long[] ids = new long[64];
+        private int[] birthDays = new int[64];
+        private int[] addressCodes = new int[64];
+        private long[] changeSeqs = new long[64];
+        private int size;
+        private long maxChangeSeq = Long.MIN_VALUE;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            Timestamp birthDate = rs.getTimestamp(2);
+            add(rs.getLong(1), birthDate == null ? NO_BIRTH_DATE : (int) Math.floorDiv(birthDate.getTime(), DAY_MILLIS),
+                    addressCode(rs.getString(3)), rs.getLong(4));
+        }
+
+        private void add(long id, int birthDay, int addressCode, long changeSeq) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                birthDays = Arrays.copyOf(birthDays, size * 2);
+                addressCodes = Arrays.copyOf(addressCodes, size * 2);
+                changeSeqs = Arrays.copyOf(changeSeqs, size * 2);
+            }
+            ids[size] = id;
+            birthDays[size] = birthDay;
+            addressCodes[size] = addressCode;
+            changeSeqs[size] = changeSeq;
+            maxChangeSeq = Math.max(maxChangeSeq, changeSeq);
+            size++;
+        }
+
+        /**
+         * These rows with {@code newer} merged in by id, taking a row from {@code newer} where both have one.
+         */
+        private Changes overriddenBy(Changes newer) {
+            if (newer.size == 0) {
+                return this;
+            }
+            Changes merged = new Changes();
+            int i = 0;
+            int k = 0;
+            while (i < size || k < newer.size) {
+                long id = i < size ? ids[i] : Long.MAX_VALUE;
+                long newerId = k < newer.size ? newer.ids[k] : Long.MAX_VALUE;
+                if (newerId <= id) {
+                    merged.add(newerId, newer.birthDays[k], newer.addressCodes[k], newer.changeSeqs[k]);
+                    k++;
+                    if (newerId == id) {
+                        i++;
+                    }
+                } else {
+                    merged.add(id, birthDays[i], addressCodes[i], changeSeqs[i]);
+                    i++;
+                }
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Id and {@code change_seq} of every row, in id order.
+     */
+    private static class Rows implements RowCallbackHandler {
+        private long[] ids;
+        private long[] changeSeqs;
+        private int size;
+
+        private Rows(int expected) {
+            ids = new long[Math.max(16, expected)];
+            changeSeqs = new long[ids.length];
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                changeSeqs = Arrays.copyOf(changeSeqs, size * 2);
+            }
+            ids[size] = rs.getLong(1);
+            changeSeqs[size] = rs.getLong(2);
+            size++;
+        }
+
+        /**
+         * Ids whose {@code change_seq} is not the one held by {@code changes}, or else by {@code current}:
+         * rows the snapshot has never seen, or only in an older version.
+         */
+        private long[] idsNotMatching(Columns current, Changes changes) {
+            long[] stale = new long[16];
+            int count = 0;
+            int c = 0;
+            int k = 0;
+            for (int i = 0; i < size; i++) {
+                long id = ids[i];
+                while (c < current.size && current.ids.get(c) < id) {
+                    c++;
+                }
+                while (k < changes.size && changes.ids[k] < id) {
+                    k++;
+                }
+                long known;
+                if (k < changes.size && changes.ids[k] == id) {
+                    known = changes.changeSeqs[k];
+                } else if (c < current.size && current.ids.get(c) == id) {
+                    known = current.changeSeqs.get(c);
+                } else {
+                    known = Long.MIN_VALUE;
+                }
+                if (known != changeSeqs[i]) {
+                    if (count == stale.length) {
+                        stale = Arrays.copyOf(stale, count * 2);
+                    }
+                    stale[count++] = id;
+                }
+            }
+            return Arrays.copyOf(stale, count);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ua.lyashko.clear.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.exception.ResourceNotFoundException;
+import ua.lyashko.clear.repository.ReactiveUserRepository;
+
+import java.util.Date;
+
+/**
+ * Reactive counterpart of {@link UserService}; the business rules are delegated to it so both stacks
+ * accept and reject exactly the same requests.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveUserService {
+    private final ReactiveUserRepository userRepository;
+    private final UserService userService;
+
+    @Autowired
+    public ReactiveUserService(ReactiveUserRepository userRepository, UserService userService) {
+        this.userRepository = userRepository;
+        this.userService = userService;
+    }
+
+    public Mono<User> createUser(User user) {
+        return Mono.fromRunnable(() -> userService.ensureEligible(user.getBirthDate()))
+                .then(userRepository.insert(user))
+                .onErrorMap(UserService::isConstraintViolation, UserService::constraintViolation);
+    }
+
+    public Mono<User> updateUser(Long id, User updatedUser) {
+        return userRepository.replaceById(id, updatedUser)
+                .onErrorMap(UserService::isConstraintViolation, UserService::constraintViolation);
+    }
+
+    public Mono<User> updatePartialUser(Long id, User updatedUser) {
+        return userRepository.patchById(id, updatedUser)
+                .onErrorMap(UserService::isConstraintViolation, UserService::constraintViolation);
+    }
+
+    public Mono<Void> deleteUser(Long userId) {
+        return userRepository.deleteById(userId)
+                .flatMap(deleted -> deleted==0
+                        ? Mono.error(new ResourceNotFoundException("User not found with ID: " + userId))
+                        : Mono.empty());
+    }
+
+    public Flux<User> searchUsersByBirthDateRange(Date from, Date to) {
+        return Mono.fromRunnable(() -> userService.validateDateRange(from, to))
+                .thenMany(userRepository.findByBirthDateBetween(from, to));
+    }
+}
@@ -0,0 +1,40 @@
+package ua.lyashko.clear.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the writes made through {@link UserService}, so readers can tell cheaply whether anything may
+ * have changed since they last looked. The counter restarts with the application, so the tag built from
+ * it carries the start time too. Writes that bypass the service are not seen.
+ */
+@Component
+public class UserChangeTracker {
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long lastModified = epoch;
+
+    public void changed() {
+        lastModified = System.currentTimeMillis();
+        generation.incrementAndGet();
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Epoch millis of the last write, or of the application start if nothing was written yet.
+     */
+    public long lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Opaque tag that changes with every write and differs between application runs.
+     */
+    public String tag() {
+        return Long.toString(epoch, 36) + "-" + Long.toString(generation.get(), 36);
+    }
+}
@@ -0,0 +1,217 @@
+package ua.lyashko.clear.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ua.lyashko.clear.dto.UserBatchResult;
+import ua.lyashko.clear.dto.UserCreationStatus;
+import ua.lyashko.clear.entity.User;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind creation of users. Accepted users wait in a bounded queue that a single writer thread drains
+ * through {@link UserService#createUsers}, up to {@code user.async-create.batch-size} users per transaction,
+ * so a burst of sign-ups costs a few batched commits instead of one commit per request.
+ * <p>
+ * A full queue refuses new users rather than growing. On shutdown the queue stops accepting and the writer
+ * flushes what is left, for at most {@code user.async-create.shutdown-timeout}. Submissions check and
+ * enqueue under a shared lock that shutdown takes exclusively, so once it returns no user can slip into a
+ * queue the writer has already finished. Statuses are kept for {@code user.async-create.status-ttl} after
+ * being decided, at most {@code user.async-create.max-statuses} of them; a user still waiting in the queue
+ * keeps its pending status however long that takes.
+ */
+@Component
+@ConditionalOnProperty(name = "user.async-create.enabled", havingValue = "true")
+public class UserCreationQueue {
+    private static final Logger log = LoggerFactory.getLogger(UserCreationQueue.class);
+    private static final long POLL_MILLIS = 200;
+
+    private final UserService userService;
+    private final BlockingQueue<Pending> queue;
+    private final int batchSize;
+    private final Duration shutdownTimeout;
+    private final Cache<UUID, UserCreationStatus> statuses;
+    private final Counter accepted;
+    private final Counter refused;
+    private final Timer flushTimer;
+    private final Thread writer;
+    private final ReadWriteLock acceptingLock = new ReentrantReadWriteLock();
+    private volatile boolean accepting = true;
+
+    @Autowired
+    public UserCreationQueue(UserService userService,
+                             MeterRegistry meterRegistry,
+                             @Value("${user.async-create.queue-capacity}") int queueCapacity,
+                             @Value("${user.async-create.batch-size}") int batchSize,
+                             @Value("${user.async-create.shutdown-timeout}") Duration shutdownTimeout,
+                             @Value("${user.async-create.status-ttl}") Duration statusTtl,
+                             @Value("${user.async-create.max-statuses}") long maxStatuses) {
+        this(userService, meterRegistry, queueCapacity, batchSize, shutdownTimeout, statusTtl, maxStatuses,
+                Ticker.systemTicker());
+    }
+
+    public UserCreationQueue(UserService userService, MeterRegistry meterRegistry, int queueCapacity, int batchSize,
+                             Duration shutdownTimeout, Duration statusTtl, long maxStatuses, Ticker ticker) {
+        this.userService = userService;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.shutdownTimeout = shutdownTimeout;
+        this.statuses = Caffeine.newBuilder()
+                .expireAfter(new StatusExpiry(statusTtl.toNanos()))
+                .maximumSize(maxStatuses)
+                .ticker(ticker)
+                .build();
+        this.accepted = Counter.builder("user.async-create.submissions").tag("outcome", "accepted").register(meterRegistry);
+        this.refused = Counter.builder("user.async-create.submissions").tag("outcome", "queue_full").register(meterRegistry);
+        this.flushTimer = Timer.builder("user.async-create.flush")
+                .description("Time to write one batch of queued users")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("user.async-create.queue.depth", queue, BlockingQueue::size)
+                .description("Users waiting to be written")
+                .register(meterRegistry);
+        this.writer = new Thread(this::drain, "user-creation-writer");
+        this.writer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Queues a validated user for creation. Empty when the queue is full or shutting down.
+     */
+    public Optional<UUID> submit(User user) {
+        UUID trackingId = UUID.randomUUID();
+        // the status must exist before the writer can overwrite it
+        statuses.put(trackingId, UserCreationStatus.pending(trackingId));
+        if (offer(new Pending(trackingId, user))) {
+            accepted.increment();
+            return Optional.of(trackingId);
+        }
+        statuses.invalidate(trackingId);
+        refused.increment();
+        return Optional.empty();
+    }
+
+    private boolean offer(Pending pending) {
+        acceptingLock.readLock().lock();
+        try {
+            return accepting && queue.offer(pending);
+        } finally {
+            acceptingLock.readLock().unlock();
+        }
+    }
+
+    public Optional<UserCreationStatus> status(UUID trackingId) {
+        return Optional.ofNullable(statuses.getIfPresent(trackingId));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // waits out submissions between their check and their offer, the writer sees what they queued
+        acceptingLock.writeLock().lock();
+        try {
+            accepting = false;
+        } finally {
+            acceptingLock.writeLock().unlock();
+        }
+        writer.join(shutdownTimeout.toMillis());
+        if (writer.isAlive()) {
+            log.warn("Gave up waiting for the user creation writer, {} users were not written", queue.size());
+        }
+    }
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (accepting || !queue.isEmpty()) {
+            try {
+                // a short poll lets the writer notice shutdown without being interrupted mid-write
+                Pending first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        Map<Integer, User> usersByIndex = new LinkedHashMap<>(batch.size() * 2);
+        for (int i = 0; i < batch.size(); i++) {
+            usersByIndex.put(i, batch.get(i).user());
+        }
+        long start = System.nanoTime();
+        try {
+            for (UserBatchResult result : userService.createUsers(usersByIndex)) {
+                UUID trackingId = batch.get(result.index()).trackingId();
+                statuses.put(trackingId, UserCreationStatus.of(trackingId, result));
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to write {} queued users", batch.size(), e);
+            for (Pending pending : batch) {
+                statuses.put(pending.trackingId(), UserCreationStatus.of(pending.trackingId(),
+                        UserBatchResult.rejected(0, List.of("User could not be created."))));
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private record Pending(UUID trackingId, User user) {
+    }
+
+    /**
+     * Pending statuses never expire, the user is still on its way; the TTL starts once the outcome is written.
+     */
+    private record StatusExpiry(long ttlNanos) implements Expiry<UUID, UserCreationStatus> {
+        @Override
+        public long expireAfterCreate(UUID trackingId, UserCreationStatus status, long currentTime) {
+            return status.status() == UserCreationStatus.Status.PENDING ? Long.MAX_VALUE : ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(UUID trackingId, UserCreationStatus status, long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(trackingId, status, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(UUID trackingId, UserCreationStatus status, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ua.lyashko.clear.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ua.lyashko.clear.exception.IneligibleUserException;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Date;
+
+/**
+ * Decides whether a user is old enough, by calendar date in UTC: someone born on day D turns N on the
+ * same month and day N years later, and someone born on 29 February turns N on 1 March in common years.
+ * <p>
+ * All of that reduces to one cutoff instant per day, the start of the first day on which a birth is too
+ * recent. The cutoff is computed once per UTC day and cached, so a check is a clock read and a compare.
+ */
+@Component
+public class UserEligibility {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final Clock clock;
+    private final int ageRequirement;
+    private final IneligibleUserException rejection;
+    private volatile Cutoff cutoff = new Cutoff(Long.MIN_VALUE, 0);
+
+    @Autowired
+    public UserEligibility(@Value("${age.requirement}") int ageRequirement) {
+        this(Clock.systemUTC(), ageRequirement);
+    }
+
+    public UserEligibility(Clock clock, int ageRequirement) {
+        this.clock = clock;
+        this.ageRequirement = ageRequirement;
+        this.rejection = new IneligibleUserException(ageRequirement);
+    }
+
+    public boolean isEligible(Date birthDate) {
+        return birthDate.getTime() < cutoffMillis();
+    }
+
+    /**
+     * Latest birth instant that is eligible today; usable as an inclusive upper bound of a birth date query.
+     */
+    public Date latestEligibleBirthDate() {
+        return new Date(cutoffMillis() - 1);
+    }
+
+    /**
+     * UTC epoch day the current cutoff belongs to; it changes when eligibility may change without any write.
+     */
+    public long cutoffDay() {
+        return today();
+    }
+
+    public int ageRequirement() {
+        return ageRequirement;
+    }
+
+    /**
+     * Shared exception for rejecting an ineligible user; its message only depends on the age requirement.
+     */
+    public IneligibleUserException rejection() {
+        return rejection;
+    }
+
+    private long cutoffMillis() {
+        long today = today();
+        Cutoff current = cutoff;
+        if (current.epochDay != today) {
+            // a racing thread computes the same value, last write wins harmlessly
+            LocalDate firstIneligibleBirthDay = LocalDate.ofEpochDay(today).minusYears(ageRequirement).plusDays(1);
+            current = new Cutoff(today, firstIneligibleBirthDay.toEpochDay() * DAY_MILLIS);
+            cutoff = current;
+        }
+        return current.millis;
+    }
+
+    private long today() {
+        return Math.floorDiv(clock.millis(), DAY_MILLIS);
+    }
+
+    private record Cutoff(long epochDay, long millis) {
+    }
+}
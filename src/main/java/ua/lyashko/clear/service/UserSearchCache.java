@@ -0,0 +1,94 @@
+package ua.lyashko.clear.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Birth date searches as serialized JSON, shared between callers. Concurrent identical searches wait for
+ * the one query already running instead of starting their own, and its result is kept for
+ * {@code user.search.cache.ttl}. Keys carry the {@link UserChangeTracker} generation, so any write
+ * through {@link UserService} makes every cached result unreachable at once; writes that bypass it are
+ * seen once the entry expires.
+ */
+@Component
+@ConditionalOnProperty(name = "user.search.cache.enabled", havingValue = "true")
+public class UserSearchCache {
+    private final UserService userService;
+    private final UserChangeTracker changeTracker;
+    private final ObjectMapper objectMapper;
+    private final AsyncCache<Key, byte[]> results;
+
+    @Autowired
+    public UserSearchCache(UserService userService, UserChangeTracker changeTracker, ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${user.search.cache.ttl}") Duration ttl,
+                           @Value("${user.search.cache.max-size}") DataSize maxSize) {
+        this.userService = userService;
+        this.changeTracker = changeTracker;
+        this.objectMapper = objectMapper;
+        this.results = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Key key, byte[] json) -> json.length)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, results.synchronous(), "userSearch");
+    }
+
+    /**
+     * The users born between {@code from} and {@code to} as a JSON array, like
+     * {@link UserService#searchUsersByBirthDateRange(Date, Date)} would return them. An invalid range is
+     * rejected before the cache is touched.
+     */
+    public byte[] search(Date from, Date to) {
+        userService.validateDateRange(from, to);
+        Key key = new Key(from.getTime(), to.getTime(), changeTracker.generation());
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = results.get(key, (k, executor) -> mine);
+        if (running != mine) {
+            return await(running);
+        }
+        // the first caller runs the query on its own thread; failed futures are dropped by the cache
+        try {
+            mine.complete(objectMapper.writeValueAsBytes(userService.searchUsersByBirthDateRange(from, to)));
+        } catch (JsonProcessingException e) {
+            mine.completeExceptionally(new UncheckedIOException(e));
+        } catch (Throwable e) {
+            // whatever happens, the waiters must not be left hanging on this future
+            mine.completeExceptionally(e);
+        }
+        return await(mine);
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Key(long from, long to, long generation) {
+    }
+}
@@ -1,79 +1,406 @@
 package ua.lyashko.clear.service;
 
+import io.micrometer.core.annotation.Timed;
+import io.r2dbc.spi.R2dbcException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import ua.lyashko.clear.dto.UserBatchResult;
+import ua.lyashko.clear.dto.UserBulkResult;
+import ua.lyashko.clear.dto.UserCursor;
+import ua.lyashko.clear.dto.UserExportFormat;
+import ua.lyashko.clear.dto.UserField;
+import ua.lyashko.clear.dto.UserPage;
 import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.exception.ConflictException;
+import ua.lyashko.clear.exception.InvalidRequestException;
+import ua.lyashko.clear.exception.PreconditionFailedException;
 import ua.lyashko.clear.exception.ResourceNotFoundException;
+import ua.lyashko.clear.repository.UserBirthDateIndex;
+import ua.lyashko.clear.repository.UserEmailFilter;
 import ua.lyashko.clear.repository.UserRepository;
 
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class UserService {
+    private static final InvalidRequestException INVALID_DATE_RANGE =
+            new InvalidRequestException("From date must be before To date.");
+    // shared with ReactiveUserService, which reports the same constraint violations
+    static final ConflictException DUPLICATE_EMAIL =
+            new ConflictException("A user with this email already exists.");
+    static final InvalidRequestException UNSTORABLE_USER =
+            new InvalidRequestException("User has a value the database cannot store, such as a field over 255 characters.");
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final String EMAIL_INDEX = "UX_USERS_EMAIL_NORMALIZED";
+
     private final UserRepository userRepository;
+    private final UserChangeTracker changeTracker;
+    private final UserEligibility eligibility;
 
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, UserChangeTracker changeTracker, UserEligibility eligibility) {
         this.userRepository = userRepository;
+        this.changeTracker = changeTracker;
+        this.eligibility = eligibility;
+    }
+
+    private UserBirthDateIndex birthDateIndex;
+
+    /**
+     * Present only with {@code user.birth-date-index.enabled}; the service keeps it in sync with every
+     * write it makes and answers range searches from it.
+     */
+    @Autowired(required = false)
+    public void setBirthDateIndex(UserBirthDateIndex birthDateIndex) {
+        this.birthDateIndex = birthDateIndex;
     }
 
-    @Value("${age.requirement}")
-    private int ageRequirement;
+    private UserEmailFilter emailFilter;
+
+    /**
+     * Present only with {@code user.email-filter.enabled}; lets creates with a new email skip the duplicate
+     * lookup. Without it duplicates are still refused, by the unique index.
+     */
+    @Autowired(required = false)
+    public void setEmailFilter(UserEmailFilter emailFilter) {
+        this.emailFilter = emailFilter;
+    }
 
+    @Value("${user.search.page.default-size}")
+    private int defaultPageSize;
+
+    @Value("${user.search.page.max-size}")
+    private int maxPageSize;
+
+    @Timed(value = "user.service", histogram = true)
     public User createUser(User user) {
-        if (isUserEligible(user.getBirthDate())) {
-            return userRepository.save(user);
+        ensureEligible(user.getBirthDate());
+        if (isKnownEmail(user.getEmail())) {
+            throw DUPLICATE_EMAIL;
         }
-        throw new IllegalArgumentException("User must be at least " + ageRequirement + " years old.");
+        User createdUser = uniqueEmail(() -> userRepository.save(user));
+        written(createdUser);
+        return createdUser;
     }
 
-    public Optional<User> updateUser(Long id, User updatedUser) {
-        return userRepository.findById(id).map(existingUser -> {
-            existingUser.setEmail(updatedUser.getEmail());
-            existingUser.setFirstName(updatedUser.getFirstName());
-            existingUser.setLastName(updatedUser.getLastName());
-            existingUser.setBirthDate(updatedUser.getBirthDate());
-            existingUser.setAddress(updatedUser.getAddress());
-            existingUser.setPhoneNumber(updatedUser.getPhoneNumber());
-            return userRepository.save(existingUser);
+    /**
+     * Creates every eligible user of the batch in a single transaction. Keys are the record indexes
+     * reported back in the results, which come out in the same order as the map.
+     */
+    public List<UserBatchResult> createUsers(Map<Integer, User> usersByIndex) {
+        List<UserBatchResult> results = new ArrayList<>(usersByIndex.size());
+        List<User> eligibleUsers = new ArrayList<>(usersByIndex.size());
+        List<Integer> eligibleIndexes = new ArrayList<>(usersByIndex.size());
+        usersByIndex.forEach((index, user) -> {
+            if (!eligibility.isEligible(user.getBirthDate())) {
+                results.add(UserBatchResult.rejected(index,
+                        List.of(ineligibleMessage())));
+            } else if (isKnownEmail(user.getEmail())) {
+                results.add(UserBatchResult.rejected(index, List.of(DUPLICATE_EMAIL.getMessage())));
+            } else {
+                eligibleUsers.add(user);
+                eligibleIndexes.add(index);
+            }
         });
+        if (!eligibleUsers.isEmpty()) {
+            try {
+                List<User> createdUsers = userRepository.insertAll(eligibleUsers);
+                for (int i = 0; i < createdUsers.size(); i++) {
+                    written(createdUsers.get(i));
+                    results.add(UserBatchResult.created(eligibleIndexes.get(i), createdUsers.get(i).getId()));
+                }
+            } catch (DataIntegrityViolationException e) {
+                // one conflicting or oversized record rolls back the whole chunk, retry row by row to isolate it
+                for (int i = 0; i < eligibleUsers.size(); i++) {
+                    results.add(createSingle(eligibleIndexes.get(i), eligibleUsers.get(i)));
+                }
+            }
+        }
+        results.sort(Comparator.comparingInt(UserBatchResult::index));
+        return results;
     }
 
+    private UserBatchResult createSingle(int index, User user) {
+        // the id and version handed out before the rollback are gone with it
+        user.setId(null);
+        user.setVersion(null);
+        try {
+            User createdUser = userRepository.insertAll(List.of(user)).get(0);
+            written(createdUser);
+            return UserBatchResult.created(index, createdUser.getId());
+        } catch (DataIntegrityViolationException e) {
+            return UserBatchResult.rejected(index, List.of(constraintViolation(e).getMessage()));
+        }
+    }
+
+    @Timed(value = "user.service", histogram = true)
+    public Optional<User> updateUser(Long id, User updatedUser) {
+        Optional<User> user = uniqueEmail(() -> userRepository.replaceById(id, updatedUser));
+        user.ifPresent(updated -> rewritten(updated, updatedUser));
+        return user;
+    }
+
+    /**
+     * Replaces the user only if it is still at {@code expectedVersion}.
+     *
+     * @throws PreconditionFailedException if the user exists at another version
+     */
+    @Timed(value = "user.service", histogram = true)
+    public Optional<User> updateUser(Long id, User updatedUser, long expectedVersion) {
+        Optional<User> user = uniqueEmail(() -> userRepository.replaceByIdAndVersion(id, expectedVersion, updatedUser));
+        return conditionallyWritten(id, user, updatedUser);
+    }
+
+    @Timed(value = "user.service", histogram = true)
     public Optional<User> updatePartialUser(Long id, User updatedUser) {
-        return userRepository.findById(id).map(existingUser -> {
-            if (updatedUser.getEmail()!=null) existingUser.setEmail(updatedUser.getEmail());
-            if (updatedUser.getFirstName()!=null) existingUser.setFirstName(updatedUser.getFirstName());
-            if (updatedUser.getLastName()!=null) existingUser.setLastName(updatedUser.getLastName());
-            if (updatedUser.getBirthDate()!=null) existingUser.setBirthDate(updatedUser.getBirthDate());
-            if (updatedUser.getAddress()!=null) existingUser.setAddress(updatedUser.getAddress());
-            if (updatedUser.getPhoneNumber()!=null) existingUser.setPhoneNumber(updatedUser.getPhoneNumber());
-            return userRepository.save(existingUser);
-        });
+        Optional<User> user = uniqueEmail(() -> userRepository.patchById(id, updatedUser));
+        user.ifPresent(updated -> rewritten(updated, updatedUser));
+        return user;
+    }
+
+    /**
+     * Patches the user only if it is still at {@code expectedVersion}.
+     *
+     * @throws PreconditionFailedException if the user exists at another version
+     */
+    @Timed(value = "user.service", histogram = true)
+    public Optional<User> updatePartialUser(Long id, User updatedUser, long expectedVersion) {
+        Optional<User> user = uniqueEmail(() -> userRepository.patchByIdAndVersion(id, expectedVersion, updatedUser));
+        return conditionallyWritten(id, user, updatedUser);
     }
 
+    private Optional<User> conditionallyWritten(Long id, Optional<User> user, User changes) {
+        if (user.isPresent()) {
+            rewritten(user.get(), changes);
+            return user;
+        }
+        // only a failed update pays for telling a stale version from a missing user
+        if (userRepository.existsById(id)) {
+            throw new PreconditionFailedException("User " + id + " was modified by someone else.");
+        }
+        return user;
+    }
+
+    public Optional<User> findUser(Long id) {
+        return userRepository.findById(id);
+    }
+
+    @Timed(value = "user.service", histogram = true)
     public void deleteUser(Long userId) {
         if (userRepository.existsById(userId)) {
             userRepository.deleteById(userId);
+            deleted(userId);
         } else {
             throw new ResourceNotFoundException("User not found with ID: " + userId);
         }
     }
 
+    /**
+     * Deletes all listed users with set-based statements instead of a lookup and a delete per user.
+     */
+    @Timed(value = "user.service", histogram = true)
+    public UserBulkResult deleteUsers(List<Long> ids) {
+        List<Long> requestedIds = List.copyOf(new LinkedHashSet<>(ids));
+        List<Long> deletedIds = userRepository.bulkDeleteById(requestedIds);
+        deletedIds.forEach(this::deleted);
+        return new UserBulkResult(deletedIds.size(), missing(requestedIds, deletedIds));
+    }
+
+    @Timed(value = "user.service", histogram = true)
+    public UserBulkResult deleteUsersByBirthDateRange(Date from, Date to) {
+        validateDateRange(from, to);
+        List<Long> deletedIds = userRepository.bulkDeleteByBirthDateBetween(from, to);
+        deletedIds.forEach(this::deleted);
+        return new UserBulkResult(deletedIds.size(), List.of());
+    }
+
+    @Timed(value = "user.service", histogram = true)
+    public UserBulkResult updatePartialUsers(List<Long> ids, User patch) {
+        List<Long> requestedIds = List.copyOf(new LinkedHashSet<>(ids));
+        List<User> updatedUsers = uniqueEmail(() -> userRepository.bulkPatchById(requestedIds, patch));
+        List<Long> updatedIds = new ArrayList<>(updatedUsers.size());
+        for (User user : updatedUsers) {
+            rewritten(user, patch);
+            updatedIds.add(user.getId());
+        }
+        return new UserBulkResult(updatedIds.size(), missing(requestedIds, updatedIds));
+    }
+
+    private static List<Long> missing(List<Long> requestedIds, List<Long> foundIds) {
+        if (foundIds.size() == requestedIds.size()) {
+            return List.of();
+        }
+        Set<Long> found = new HashSet<>(foundIds);
+        return requestedIds.stream().filter(id -> !found.contains(id)).toList();
+    }
+
+    @Timed(value = "user.service", histogram = true)
     public List<User> searchUsersByBirthDateRange(Date from, Date to) {
-        if (from.after(to)) {
-            throw new IllegalArgumentException("From date must be before To date.");
+        validateDateRange(from, to);
+        if (birthDateIndex != null) {
+            return userRepository.findAllByIdInOrder(birthDateIndex.findIdsByBirthDateBetween(from, to));
         }
         return userRepository.findByBirthDateBetween(from, to);
     }
 
-    private boolean isUserEligible(Date birthDate) {
-        Date currentDate = new Date();
-        long ageInMillis = currentDate.getTime() - birthDate.getTime();
-        long ageInYears = ageInMillis / (1000L * 60 * 60 * 24 * 365);
+    /**
+     * Like {@link #searchUsersByBirthDateRange(Date, Date)}, but returns only the requested fields of each user.
+     */
+    @Timed(value = "user.service", histogram = true)
+    public List<Map<String, Object>> searchUserFieldsByBirthDateRange(Date from, Date to, List<UserField> fields) {
+        validateDateRange(from, to);
+        return userRepository.findFieldsByBirthDateBetween(from, to, fields);
+    }
+
+    public UserPage searchUsersByBirthDateRange(Date from, Date to, String cursor, Integer size) {
+        validateDateRange(from, to);
+        int pageSize = size==null ? defaultPageSize : size;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new InvalidRequestException("Page size must be between 1 and " + maxPageSize + ".");
+        }
+        // one extra row tells us whether another page exists without a count query
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<User> users;
+        if (cursor==null) {
+            users = userRepository.findByBirthDateBetweenOrderByBirthDateAscIdAsc(from, to, limit);
+        } else {
+            UserCursor after = UserCursor.decode(cursor);
+            users = userRepository.findByBirthDateBetweenAfter(from, to, after.birthDate(), after.id(), limit);
+        }
+        if (users.size() <= pageSize) {
+            return new UserPage(users, null);
+        }
+        List<User> page = users.subList(0, pageSize);
+        User last = page.get(pageSize - 1);
+        return new UserPage(page, new UserCursor(last.getBirthDate(), last.getId()).encode());
+    }
+
+    public void streamUsersByBirthDateRange(Date from, Date to, Consumer<User> consumer) {
+        validateDateRange(from, to);
+        userRepository.streamByBirthDateBetween(from, to, consumer);
+    }
+
+    private void written(User user) {
+        if (birthDateIndex != null) {
+            birthDateIndex.put(user.getId(), user.getBirthDate());
+        }
+        if (emailFilter != null) {
+            emailFilter.add(user.getEmail());
+        }
+        changeTracker.changed();
+    }
+
+    private void rewritten(User user, User changes) {
+        // the previous email is unknown here, it may have been replaced
+        if (emailFilter != null && changes.getEmail() != null) {
+            emailFilter.removed();
+        }
+        written(user);
+    }
+
+    private void deleted(Long id) {
+        if (birthDateIndex != null) {
+            birthDateIndex.remove(id);
+        }
+        if (emailFilter != null) {
+            emailFilter.removed();
+        }
+        changeTracker.changed();
+    }
+
+    private boolean isKnownEmail(String email) {
+        return emailFilter != null && emailFilter.contains(email, userRepository::existsByNormalizedEmail);
+    }
+
+    /**
+     * Runs a write and reports a violation of the unique email index as a duplicate email, any other
+     * constraint the row breaks, such as a value longer than its column, as an invalid request.
+     */
+    private static <T> T uniqueEmail(Supplier<T> write) {
+        try {
+            return write.get();
+        } catch (DataIntegrityViolationException e) {
+            throw constraintViolation(e);
+        }
+    }
+
+    static RuntimeException constraintViolation(Throwable e) {
+        return isDuplicateEmail(e) ? DUPLICATE_EMAIL : UNSTORABLE_USER;
+    }
+
+    /**
+     * Whether the failure is the unique email index refusing a row, as opposed to another constraint.
+     * JDBC and R2DBC drivers both carry the SQL state and the index name somewhere in the cause chain.
+     */
+    static boolean isDuplicateEmail(Throwable e) {
+        Throwable cause = sqlError(e);
+        return cause != null && UNIQUE_VIOLATION.equals(sqlState(cause)) && cause.getMessage() != null
+                && cause.getMessage().toUpperCase(Locale.ROOT).contains(EMAIL_INDEX);
+    }
+
+    /**
+     * Whether the row broke a constraint or did not fit a column (SQL state classes 23 and 22). R2DBC does
+     * not translate the latter into a {@link DataIntegrityViolationException}, so the reactive stack asks this.
+     */
+    static boolean isConstraintViolation(Throwable e) {
+        Throwable cause = sqlError(e);
+        return cause != null && (sqlState(cause).startsWith("22") || sqlState(cause).startsWith("23"));
+    }
+
+    private static Throwable sqlError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (sqlState(cause) != null) {
+                return cause;
+            }
+        }
+        return null;
+    }
+
+    private static String sqlState(Throwable e) {
+        return e instanceof SQLException sql ? sql.getSQLState()
+                : e instanceof R2dbcException r2dbc ? r2dbc.getSqlState() : null;
+    }
+
+    public void exportUsers(Date from, Date to, UserExportFormat format, Writer out) {
+        if (from != null && to != null) {
+            validateDateRange(from, to);
+        }
+        userRepository.exportByBirthDateBetween(from, to, format, out);
+    }
+
+    /**
+     * Rejects a range whose start is after its end. Every search does this itself; callers that commit
+     * to a response before searching, like streams, call it up front.
+     */
+    public void validateDateRange(Date from, Date to) {
+        if (from.after(to)) {
+            throw INVALID_DATE_RANGE;
+        }
+    }
+
+    void ensureEligible(Date birthDate) {
+        if (!eligibility.isEligible(birthDate)) {
+            throw eligibility.rejection();
+        }
+    }
 
-        return ageInYears >= ageRequirement;
+    private String ineligibleMessage() {
+        return eligibility.rejection().getMessage();
     }
 }
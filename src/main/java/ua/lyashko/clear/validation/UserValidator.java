@@ -0,0 +1,123 @@
+package ua.lyashko.clear.validation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ua.lyashko.clear.entity.User;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Validation rules shared by create, full update and batch import.
+ * A valid user costs no allocation: the error list is only built once a rule fails.
+ */
+@Component
+public class UserValidator {
+    static final String INVALID_EMAIL = "Invalid email address.";
+    static final String FIRST_NAME_REQUIRED = "First name is required.";
+    static final String LAST_NAME_REQUIRED = "Last name is required.";
+    static final String INVALID_BIRTH_DATE = "Invalid birth date or date in the future.";
+
+    private final Clock clock;
+    private final Counter invalidEmail;
+    private final Counter missingFirstName;
+    private final Counter missingLastName;
+    private final Counter invalidBirthDate;
+
+    @Autowired
+    public UserValidator(MeterRegistry meterRegistry) {
+        this(Clock.systemUTC(), meterRegistry);
+    }
+
+    public UserValidator(Clock clock, MeterRegistry meterRegistry) {
+        this.clock = clock;
+        this.invalidEmail = failureCounter(meterRegistry, "email");
+        this.missingFirstName = failureCounter(meterRegistry, "firstName");
+        this.missingLastName = failureCounter(meterRegistry, "lastName");
+        this.invalidBirthDate = failureCounter(meterRegistry, "birthDate");
+    }
+
+    public List<String> validate(User user) {
+        boolean validEmail = isValidEmail(user.getEmail());
+        boolean hasFirstName = !isEmptyOrNull(user.getFirstName());
+        boolean hasLastName = !isEmptyOrNull(user.getLastName());
+        boolean validBirthDate = isPastDate(user.getBirthDate());
+        if (validEmail && hasFirstName && hasLastName && validBirthDate) {
+            return List.of();
+        }
+        List<String> validationErrors = new ArrayList<>(4);
+        if (!validEmail) {
+            validationErrors.add(INVALID_EMAIL);
+            invalidEmail.increment();
+        }
+        if (!hasFirstName) {
+            validationErrors.add(FIRST_NAME_REQUIRED);
+            missingFirstName.increment();
+        }
+        if (!hasLastName) {
+            validationErrors.add(LAST_NAME_REQUIRED);
+            missingLastName.increment();
+        }
+        if (!validBirthDate) {
+            validationErrors.add(INVALID_BIRTH_DATE);
+            invalidBirthDate.increment();
+        }
+        return validationErrors;
+    }
+
+    /**
+     * Hand-written equivalent of {@code ^[A-Za-z0-9+_.-]+@(.+)$}: a non-empty local part of the allowed
+     * characters, an {@code @}, then at least one character that is not a line terminator.
+     */
+    static boolean isValidEmail(String email) {
+        if (email==null) {
+            return false;
+        }
+        int length = email.length();
+        int at = -1;
+        for (int i = 0; i < length; i++) {
+            char c = email.charAt(i);
+            if (at >= 0) {
+                if (isLineTerminator(c)) {
+                    return false;
+                }
+            } else if (c=='@') {
+                if (i==0) {
+                    return false;
+                }
+                at = i;
+            } else if (!isLocalPartChar(c)) {
+                return false;
+            }
+        }
+        return at >= 0 && at < length - 1;
+    }
+
+    private static boolean isLocalPartChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c=='+' || c=='_' || c=='.' || c=='-';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c=='\n' || c=='\r' || c=='\u0085' || c=='\u2028' || c=='\u2029';
+    }
+
+    private static Counter failureCounter(MeterRegistry meterRegistry, String field) {
+        return Counter.builder("user.validation.failures")
+                .description("Users rejected by a validation rule")
+                .tag("field", field)
+                .register(meterRegistry);
+    }
+
+    private static boolean isEmptyOrNull(String str) {
+        return str==null || str.isEmpty();
+    }
+
+    private boolean isPastDate(Date date) {
+        return date!=null && date.getTime() < clock.millis();
+    }
+}
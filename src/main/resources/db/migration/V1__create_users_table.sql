@@ -0,0 +1,12 @@
+CREATE SEQUENCE users_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE users
+(
+    id           BIGINT NOT NULL PRIMARY KEY,
+    email        VARCHAR(255),
+    first_name   VARCHAR(255),
+    last_name    VARCHAR(255),
+    birth_date   TIMESTAMP(6),
+    address      VARCHAR(255),
+    phone_number VARCHAR(255)
+);
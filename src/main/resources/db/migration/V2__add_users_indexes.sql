@@ -0,0 +1,5 @@
+-- Serves both the plain birth_date range search (leading column) and the keyset pages
+-- ordered by (birth_date, id), so a separate single-column birth_date index would be redundant.
+CREATE INDEX idx_users_birth_date_id ON users (birth_date, id);
+
+CREATE UNIQUE INDEX ux_users_email ON users (email);
@@ -0,0 +1 @@
+ALTER TABLE users ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,5 @@
+-- Emails are unique regardless of case and surrounding blanks. The generated column carries the
+-- normalized form so the unique index can enforce it and duplicate lookups can use it.
+ALTER TABLE users ADD COLUMN email_normalized VARCHAR(255) GENERATED ALWAYS AS (LOWER(TRIM(email)));
+DROP INDEX ux_users_email;
+CREATE UNIQUE INDEX ux_users_email_normalized ON users (email_normalized);
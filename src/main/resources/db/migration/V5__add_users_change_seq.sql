@@ -0,0 +1,6 @@
+-- Every insert and every update stamps the row with the next value, whoever writes it, so readers can
+-- pick up what changed since the highest value they have seen.
+CREATE SEQUENCE users_change_seq;
+ALTER TABLE users ADD COLUMN change_seq BIGINT DEFAULT NEXT VALUE FOR users_change_seq
+    ON UPDATE NEXT VALUE FOR users_change_seq NOT NULL;
+CREATE INDEX idx_users_change_seq ON users (change_seq);
@@ -0,0 +1,143 @@
+package ua.lyashko.clear;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Closed-loop HTTP load generator for the load tests: {@code concurrency} workers send requests back to back
+ * until {@code totalRequests} have completed, recording the latency of every request.
+ */
+public class LoadDriver {
+    private final HttpClient client;
+    private final int concurrency;
+
+    public LoadDriver(int concurrency) {
+        this.concurrency = concurrency;
+        this.client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(concurrency))
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public Report run(String name, int totalRequests, IntFunction<HttpRequest> requests) throws InterruptedException {
+        return runMix(name, totalRequests, List.of(new Operation(name, 1, requests))).get(0);
+    }
+
+    /**
+     * Interleaves the operations in proportion to their weights. Returns the report of the whole run
+     * first, followed by one report per operation.
+     */
+    public List<Report> runMix(String name, int totalRequests, List<Operation> operations) throws InterruptedException {
+        int[] schedule = schedule(operations);
+        int[] counts = new int[operations.size()];
+        for (int i = 0; i < totalRequests; i++) {
+            counts[schedule[i % schedule.length]]++;
+        }
+        long[] latencies = new long[totalRequests];
+        long[][] operationLatencies = new long[operations.size()][];
+        AtomicInteger[] operationSlots = new AtomicInteger[operations.size()];
+        AtomicInteger[] operationErrors = new AtomicInteger[operations.size()];
+        for (int op = 0; op < operations.size(); op++) {
+            operationLatencies[op] = new long[counts[op]];
+            operationSlots[op] = new AtomicInteger();
+            operationErrors[op] = new AtomicInteger();
+        }
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int worker = 0; worker < concurrency; worker++) {
+            workers.execute(() -> {
+                try {
+                    for (int i = next.getAndIncrement(); i < totalRequests; i = next.getAndIncrement()) {
+                        int op = schedule[i % schedule.length];
+                        long sent = System.nanoTime();
+                        try {
+                            HttpRequest request = operations.get(op).requests().apply(i);
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() >= 400) {
+                                operationErrors[op].incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            operationErrors[op].incrementAndGet();
+                        }
+                        long latency = System.nanoTime() - sent;
+                        latencies[i] = latency;
+                        operationLatencies[op][operationSlots[op].getAndIncrement()] = latency;
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        workers.shutdown();
+        List<Report> reports = new ArrayList<>(operations.size() + 1);
+        int errors = Arrays.stream(operationErrors).mapToInt(AtomicInteger::get).sum();
+        Arrays.sort(latencies);
+        reports.add(new Report(name, totalRequests, errors, elapsed, latencies));
+        if (operations.size() > 1) {
+            for (int op = 0; op < operations.size(); op++) {
+                Arrays.sort(operationLatencies[op]);
+                reports.add(new Report(name + " " + operations.get(op).name(), counts[op], operationErrors[op].get(),
+                        elapsed, operationLatencies[op]));
+            }
+        }
+        return reports;
+    }
+
+    // operation index for each slot of one weight cycle, spread so the kinds interleave
+    private static int[] schedule(List<Operation> operations) {
+        int totalWeight = operations.stream().mapToInt(Operation::weight).sum();
+        int[] schedule = new int[totalWeight];
+        double[] credit = new double[operations.size()];
+        for (int slot = 0; slot < totalWeight; slot++) {
+            int pick = 0;
+            for (int op = 0; op < operations.size(); op++) {
+                credit[op] += operations.get(op).weight();
+                if (credit[op] > credit[pick]) {
+                    pick = op;
+                }
+            }
+            credit[pick] -= totalWeight;
+            schedule[slot] = pick;
+        }
+        return schedule;
+    }
+
+    /**
+     * One kind of request in a mix; {@code requests} builds the request for a given request number.
+     */
+    public record Operation(String name, int weight, IntFunction<HttpRequest> requests) {
+    }
+
+    public record Report(String name, int requests, int errors, long elapsedNanos, long[] sortedLatencies) {
+
+        public double throughput() {
+            return requests * 1_000_000_000d / elapsedNanos;
+        }
+
+        public double percentileMillis(double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(index, 0)] / 1_000_000d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %8d req %6d err %10.1f req/s   p50 %8.2f ms   p95 %8.2f ms   p99 %8.2f ms   max %8.2f ms",
+                    name, requests, errors, throughput(), percentileMillis(50), percentileMillis(95),
+                    percentileMillis(99), percentileMillis(100));
+        }
+    }
+}
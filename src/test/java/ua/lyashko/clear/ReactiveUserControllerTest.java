@@ -0,0 +1,103 @@
+package ua.lyashko.clear;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ua.lyashko.clear.controller.ReactiveUserController;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.exception.ResourceNotFoundException;
+import ua.lyashko.clear.service.ReactiveUserService;
+import ua.lyashko.clear.validation.UserValidator;
+
+import java.util.Date;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+@WebFluxTest(ReactiveUserController.class)
+@ActiveProfiles("reactive")
+@Import({UserValidator.class, SimpleMeterRegistry.class})
+public class ReactiveUserControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveUserService userService;
+
+    @Test
+    public void testCreateUser_ValidUser_Returns201Created() {
+        User user = new User();
+        user.setEmail("test@example.com");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setBirthDate(new Date(0));
+        User createdUser = new User();
+        createdUser.setId(7L);
+
+        Mockito.when(userService.createUser(any(User.class))).thenReturn(Mono.just(createdUser));
+
+        webTestClient.post().uri("/api/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(user)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueEquals("Location", "/api/users/7");
+    }
+
+    @Test
+    public void testCreateUser_InvalidUser_Returns400BadRequest() {
+        webTestClient.post().uri("/api/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new User())
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void testUpdatePartialUser_UnknownUser_Returns404NotFound() {
+        Mockito.when(userService.updatePartialUser(eq(1L), any(User.class))).thenReturn(Mono.empty());
+
+        webTestClient.patch().uri("/api/users/{id}", 1L)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new User())
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testDeleteUser_UnknownUser_Returns404NotFound() {
+        Mockito.when(userService.deleteUser(1L))
+                .thenReturn(Mono.error(new ResourceNotFoundException("User not found with ID: 1")));
+
+        webTestClient.delete().uri("/api/users/{id}", 1L)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void testSearchUserByBirthDateRange_Ndjson_StreamsEveryUser() {
+        User first = new User();
+        first.setId(1L);
+        User second = new User();
+        second.setId(2L);
+
+        Mockito.when(userService.searchUsersByBirthDateRange(any(Date.class), any(Date.class)))
+                .thenReturn(Flux.just(first, second));
+
+        webTestClient.get().uri("/api/users/search?from=2023-09-20&to=2023-09-27")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(User.class).hasSize(2);
+    }
+}
@@ -0,0 +1,108 @@
+package ua.lyashko.clear;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.test.StepVerifier;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.exception.ConflictException;
+import ua.lyashko.clear.exception.InvalidRequestException;
+import ua.lyashko.clear.repository.ReactiveUserRepository;
+import ua.lyashko.clear.service.ReactiveUserService;
+import ua.lyashko.clear.service.UserService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the R2DBC statements against the schema Flyway creates over JDBC, in the same in-memory database.
+ */
+@JdbcTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:reactive-repository;DB_CLOSE_DELAY=-1")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ReactiveUserRepositoryTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private ReactiveUserRepository userRepository;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate.execute("TRUNCATE TABLE users");
+        jdbcTemplate.update("INSERT INTO users (id, email, first_name, version) VALUES " +
+                "(1, 'kept@example.com', 'Kept', 0), (2, 'taken@example.com', 'Other', 0)");
+        // inserts draw their ids from users_seq, keep them clear of the rows above
+        jdbcTemplate.execute("ALTER SEQUENCE users_seq RESTART WITH 1000");
+        userRepository = new ReactiveUserRepository("r2dbc:h2:mem:///reactive-repository;DB_CLOSE_DELAY=-1",
+                "sa", "password", 1, 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        userRepository.close();
+    }
+
+    @Test
+    public void testPatchById_ReturnsUpdatedRow() {
+        User patch = new User();
+        patch.setFirstName("Changed");
+
+        StepVerifier.create(userRepository.patchById(1L, patch))
+                .assertNext(user -> {
+                    assertEquals("Changed", user.getFirstName());
+                    assertEquals("kept@example.com", user.getEmail());
+                    assertEquals(1L, user.getVersion());
+                })
+                .verifyComplete();
+        StepVerifier.create(userRepository.patchById(-1L, patch)).verifyComplete();
+    }
+
+    @Test
+    public void testPatchById_TakenEmail_FailsAndKeepsUser() {
+        User patch = new User();
+        patch.setEmail("Taken@example.com");
+
+        StepVerifier.create(userRepository.patchById(1L, patch))
+                .verifyError(DataIntegrityViolationException.class);
+
+        assertEquals("kept@example.com", jdbcTemplate.queryForObject(
+                "SELECT email FROM users WHERE id = 1", String.class));
+        assertEquals(0L, jdbcTemplate.queryForObject("SELECT version FROM users WHERE id = 1", Long.class));
+    }
+
+    @Test
+    public void testServiceUpdate_TakenEmail_IsConflict() {
+        ReactiveUserService userService = new ReactiveUserService(userRepository, Mockito.mock(UserService.class));
+        User patch = new User();
+        patch.setEmail("taken@example.com");
+        User duplicate = new User();
+        duplicate.setEmail("kept@example.com");
+
+        StepVerifier.create(userService.updatePartialUser(1L, patch)).verifyError(ConflictException.class);
+        StepVerifier.create(userService.updateUser(1L, patch)).verifyError(ConflictException.class);
+        StepVerifier.create(userService.createUser(duplicate)).verifyError(ConflictException.class);
+    }
+
+    @Test
+    public void testServiceUpdate_TooLongAddress_IsInvalidRequest() {
+        ReactiveUserService userService = new ReactiveUserService(userRepository, Mockito.mock(UserService.class));
+        User patch = new User();
+        patch.setAddress("a".repeat(256));
+        User created = new User();
+        created.setEmail("long@example.com");
+        created.setAddress("a".repeat(256));
+
+        StepVerifier.create(userService.updatePartialUser(1L, patch)).verifyError(InvalidRequestException.class);
+        StepVerifier.create(userService.createUser(created)).verifyError(InvalidRequestException.class);
+    }
+}
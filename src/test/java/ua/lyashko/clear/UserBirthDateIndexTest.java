@@ -0,0 +1,101 @@
+package ua.lyashko.clear;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ua.lyashko.clear.repository.UserBirthDateIndex;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@Import({UserBirthDateIndex.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = "user.birth-date-index.enabled=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserBirthDateIndexTest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserBirthDateIndex index;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        // ten users a day over a hundred days, ids interleaved across days
+        jdbcTemplate.update("INSERT INTO users (id, email, birth_date) " +
+                "SELECT X, 'user' || X || '@example.com', DATEADD('DAY', MOD(X, 100), TIMESTAMP '1990-01-01 00:00:00') " +
+                "FROM SYSTEM_RANGE(1, 1000)");
+        index.rebuild();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("TRUNCATE TABLE users");
+    }
+
+    @Test
+    public void testRebuild_MatchesTheTable() {
+        long[] ids = index.findIdsByBirthDateBetween(day(10), day(19));
+
+        assertEquals(1000, index.size());
+        assertArrayEquals(jdbcTemplate.queryForList("SELECT id FROM users WHERE birth_date BETWEEN ? AND ? " +
+                "ORDER BY birth_date, id", Long.class, day(10), day(19)).stream().mapToLong(Long::longValue).toArray(), ids);
+        assertEquals(100, ids.length);
+    }
+
+    @Test
+    public void testPut_MovesUserToItsNewBirthDate() {
+        index.put(10, day(50));
+
+        assertArrayEquals(new long[]{10, 50, 150, 250, 350, 450, 550, 650, 750, 850, 950},
+                index.findIdsByBirthDateBetween(day(50), day(50)));
+        assertEquals(9, index.findIdsByBirthDateBetween(day(10), day(10)).length);
+        assertEquals(1000, index.size());
+    }
+
+    @Test
+    public void testRebuild_SkipsUsersWithoutBirthDate() {
+        jdbcTemplate.update("INSERT INTO users (id, email) VALUES (1001, 'undated@example.com')");
+        index.rebuild();
+        index.put(10, null);
+
+        assertEquals(999, index.size());
+        assertEquals(9, index.findIdsByBirthDateBetween(day(10), day(10)).length);
+    }
+
+    @Test
+    public void testRemove_DropsUserAndEmptyDays() {
+        for (long id = 7; id <= 1000; id += 100) {
+            index.remove(id);
+        }
+
+        assertEquals(0, index.findIdsByBirthDateBetween(day(7), day(7)).length);
+        assertEquals(990, index.size());
+    }
+
+    @Test
+    public void testGauges_ReportSizeMemoryAndRebuildTime() {
+        assertEquals(1000, meterRegistry.get("user.birth-date-index.size").gauge().value());
+        assertTrue(meterRegistry.get("user.birth-date-index.memory").gauge().value() > 0);
+        assertTrue(meterRegistry.get("user.birth-date-index.rebuild").timeGauge().value() > 0);
+    }
+
+    private static Date day(int offset) {
+        return Timestamp.valueOf(LocalDateTime.of(1990, 1, 1, 0, 0).plusDays(offset));
+    }
+}
@@ -0,0 +1,83 @@
+package ua.lyashko.clear;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import ua.lyashko.clear.controller.UserController;
+import ua.lyashko.clear.dto.UserCreationStatus;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.service.UserChangeTracker;
+import ua.lyashko.clear.service.UserCreationQueue;
+import ua.lyashko.clear.service.UserEligibility;
+import ua.lyashko.clear.service.UserService;
+import ua.lyashko.clear.validation.UserValidator;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(UserController.class)
+@Import({UserValidator.class, SimpleMeterRegistry.class, UserChangeTracker.class, UserEligibility.class})
+public class UserControllerAsyncCreateTest {
+    private static final String VALID_USER = "{\"email\":\"test@example.com\",\"firstName\":\"John\"," +
+            "\"lastName\":\"Doe\",\"birthDate\":\"1990-01-01\"}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private UserService userService;
+
+    @MockBean
+    private UserCreationQueue creationQueue;
+
+    @Test
+    public void testCreateUser_Queued_Returns202WithTrackingLocation() throws Exception {
+        UUID trackingId = UUID.randomUUID();
+        Mockito.when(creationQueue.submit(any(User.class))).thenReturn(Optional.of(trackingId));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(VALID_USER))
+                .andExpect(status().isAccepted())
+                .andExpect(MockMvcResultMatchers.header().string("Location", "/api/users/creations/" + trackingId))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status").value("PENDING"));
+
+        Mockito.verifyNoInteractions(userService);
+    }
+
+    @Test
+    public void testCreateUser_QueueFull_Returns429() throws Exception {
+        Mockito.when(creationQueue.submit(any(User.class))).thenReturn(Optional.empty());
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(VALID_USER))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(MockMvcResultMatchers.header().string("Retry-After", "1"));
+    }
+
+    @Test
+    public void testCreationStatus_ReturnsStatusOr404() throws Exception {
+        UUID trackingId = UUID.randomUUID();
+        Mockito.when(creationQueue.status(trackingId))
+                .thenReturn(Optional.of(new UserCreationStatus(trackingId, UserCreationStatus.Status.CREATED, 7L, List.of())));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/creations/{trackingId}", trackingId))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.id").value(7));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/creations/{trackingId}", UUID.randomUUID()))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -1,30 +1,59 @@
 package ua.lyashko.clear;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import ua.lyashko.clear.controller.UserController;
+import ua.lyashko.clear.dto.UserBatchResult;
+import ua.lyashko.clear.dto.UserBulkResult;
+import ua.lyashko.clear.dto.UserExportFormat;
+import ua.lyashko.clear.dto.UserField;
+import ua.lyashko.clear.dto.UserPage;
 import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.exception.IneligibleUserException;
+import ua.lyashko.clear.exception.InvalidRequestException;
+import ua.lyashko.clear.exception.PreconditionFailedException;
+import ua.lyashko.clear.exception.ResourceNotFoundException;
+import ua.lyashko.clear.service.UserChangeTracker;
+import ua.lyashko.clear.service.UserEligibility;
 import ua.lyashko.clear.service.UserService;
+import ua.lyashko.clear.validation.UserValidator;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(UserController.class)
+@Import({UserValidator.class, SimpleMeterRegistry.class, UserChangeTracker.class, UserEligibility.class})
 public class UserControllerTest {
 
     @Autowired
@@ -63,6 +92,46 @@ public class UserControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCreateBatch_NdjsonBody_ReturnsPerRecordResults() throws Exception {
+        Mockito.when(userService.createUsers(any(Map.class))).thenAnswer(invocation -> {
+            Map<Integer, User> batch = invocation.getArgument(0);
+            return batch.keySet().stream().map(index -> UserBatchResult.created(index, index + 100L)).toList();
+        });
+
+        String body = "{\"email\":\"first@example.com\",\"firstName\":\"John\",\"lastName\":\"Doe\",\"birthDate\":\"1990-01-01\"}\n" +
+                "{\"email\":\"not-an-email\",\"firstName\":\"Jane\",\"lastName\":\"Doe\",\"birthDate\":\"1990-01-01\"}\n";
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/users/batch")
+                        .contentType("application/x-ndjson")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value("CREATED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(100))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].status").value("REJECTED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].errors[0]").value("Invalid email address."));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCreateBatch_JsonArrayBody_ReturnsPerRecordResults() throws Exception {
+        Mockito.when(userService.createUsers(any(Map.class))).thenAnswer(invocation -> {
+            Map<Integer, User> batch = invocation.getArgument(0);
+            return batch.keySet().stream().map(index -> UserBatchResult.created(index, index + 100L)).toList();
+        });
+
+        String body = "[{\"email\":\"first@example.com\",\"firstName\":\"John\",\"lastName\":\"Doe\",\"birthDate\":\"1990-01-01\"}," +
+                "{\"email\":\"second@example.com\",\"firstName\":\"Jane\",\"lastName\":\"Doe\",\"birthDate\":\"1991-01-01\"}]";
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/users/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(101));
+    }
+
     @Test
     public void testUpdateUser_ValidUser_Returns200Ok() throws Exception {
         Long userId = 1L;
@@ -105,6 +174,125 @@ public class UserControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void testGetUser_ReturnsVersionETagAnd304WhenUnchanged() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        user.setVersion(4L);
+
+        Mockito.when(userService.findUser(1L)).thenReturn(Optional.of(user));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/{id}", 1L))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"4\""));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/{id}", 1L).header("If-None-Match", "\"4\""))
+                .andExpect(status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+    }
+
+    @Test
+    public void testGetUser_UnknownUser_Returns404NotFound() throws Exception {
+        Mockito.when(userService.findUser(1L)).thenReturn(Optional.empty());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/{id}", 1L))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testDeleteUser_UnknownUser_Returns404Problem() throws Exception {
+        Mockito.doThrow(new ResourceNotFoundException("User not found with ID: 1")).when(userService).deleteUser(1L);
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/users/{id}", 1L))
+                .andExpect(status().isNotFound())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_PROBLEM_JSON))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status").value(404))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.detail").value("User not found with ID: 1"));
+    }
+
+    @Test
+    public void testCreateUser_Ineligible_Returns422Problem() throws Exception {
+        Mockito.when(userService.createUser(Mockito.any(User.class))).thenThrow(new IneligibleUserException(18));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"test@example.com\",\"firstName\":\"John\"," +
+                                "\"lastName\":\"Doe\",\"birthDate\":\"2020-01-01\"}"))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.detail").value("User must be at least 18 years old."));
+    }
+
+    @Test
+    public void testSearchUserByBirthDateRange_BadRequestParameters_Return400Problem() throws Exception {
+        Mockito.when(userService.searchUsersByBirthDateRange(Mockito.any(Date.class), Mockito.any(Date.class)))
+                .thenThrow(new InvalidRequestException("From date must be before To date."));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search")
+                        .param("from", "2023-09-27")
+                        .param("to", "2023-09-20"))
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.detail").value("From date must be before To date."));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search")
+                        .param("from", "yesterday")
+                        .param("to", "2023-09-20"))
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.detail").value("Invalid 'from'."));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search").param("to", "2023-09-20"))
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status").value(400));
+    }
+
+    @Test
+    public void testUpdatePartialUser_IfMatch_UpdatesThatVersionOnly() throws Exception {
+        User updated = new User();
+        updated.setVersion(5L);
+
+        Mockito.when(userService.updatePartialUser(eq(1L), any(User.class), eq(4L))).thenReturn(Optional.of(updated));
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/users/{id}", 1L)
+                        .header("If-Match", "\"4\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"5\""));
+    }
+
+    @Test
+    public void testUpdatePartialUser_StaleIfMatch_Returns412() throws Exception {
+        Mockito.when(userService.updatePartialUser(eq(1L), any(User.class), eq(3L)))
+                .thenThrow(new PreconditionFailedException("User 1 was modified by someone else."));
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/users/{id}", 1L)
+                        .header("If-Match", "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/users/{id}", 1L)
+                        .header("If-Match", "W/\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void testSearchUserByBirthDateRange_UnchangedSinceETag_Returns304WithoutSearching() throws Exception {
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search")
+                        .param("from", "2023-09-20")
+                        .param("to", "2023-09-27"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().exists("Last-Modified"))
+                .andReturn().getResponse().getHeader("ETag");
+        assertTrue(eTag.startsWith("W/"), eTag);
+        Mockito.clearInvocations(userService);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search")
+                        .param("from", "2023-09-20")
+                        .param("to", "2023-09-27")
+                        .header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+
+        Mockito.verifyNoInteractions(userService);
+    }
+
     @Test
     public void testDeleteUser_ValidUserId_Returns204NoContent() throws Exception {
         Long userId = 1L;
@@ -113,6 +301,69 @@ public class UserControllerTest {
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    public void testDeleteBulk_ReturnsAffectedAndNotFound() throws Exception {
+        Mockito.when(userService.deleteUsers(List.of(1L, 2L, 3L))).thenReturn(new UserBulkResult(2, List.of(3L)));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/users/bulk-delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1,2,3]"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.affected").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.notFound[0]").value(3));
+    }
+
+    @Test
+    public void testDeleteByBirthDateRange_Returns200Ok() throws Exception {
+        Mockito.when(userService.deleteUsersByBirthDateRange(any(Date.class), any(Date.class)))
+                .thenReturn(new UserBulkResult(40, List.of()));
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/users")
+                        .param("from", "1990-01-01")
+                        .param("to", "1990-12-31"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.affected").value(40));
+    }
+
+    @Test
+    public void testUpdatePartialBulk_MissingPatch_Returns400BadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.patch("/api/users/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[1,2]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testExport_Gzip_WritesCompressedCsv() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            Writer writer = invocation.getArgument(3);
+            writer.write("id\n1\n");
+            return null;
+        }).when(userService).exportUsers(isNull(), isNull(), eq(UserExportFormat.CSV), any(Writer.class));
+
+        MvcResult pending = mockMvc.perform(MockMvcRequestBuilders.get("/api/users/export")
+                        .param("format", "csv")
+                        .param("gzip", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("Content-Encoding", "gzip"))
+                .andExpect(MockMvcResultMatchers.content().contentType("text/csv"))
+                .andReturn();
+
+        byte[] body = result.getResponse().getContentAsByteArray();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertEquals("id\n1\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testExport_UnknownFormat_Returns400BadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/export").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void testSearchUserByBirthDateRange_ValidDateRange_Returns200Ok() throws Exception {
         Date fromDate = new Date();
@@ -127,6 +378,116 @@ public class UserControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void testSearchUserFieldsByBirthDateRange_ReturnsSelectedFields() throws Exception {
+        Mockito.when(userService.searchUserFieldsByBirthDateRange(any(Date.class), any(Date.class),
+                        eq(List.of(UserField.ID, UserField.EMAIL))))
+                .thenReturn(List.of(Map.of("id", 1L, "email", "test@example.com")));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search")
+                        .param("from", "2023-09-20")
+                        .param("to", "2023-09-27")
+                        .param("fields", "id,email,id"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].email").value("test@example.com"));
+    }
+
+    @Test
+    public void testSearchUserFieldsByBirthDateRange_UnknownField_Returns400BadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search")
+                        .param("from", "2023-09-20")
+                        .param("to", "2023-09-27")
+                        .param("fields", "id,password"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testSearchUserByBirthDateRange_EligibleOnly_ClampsRangeToCutoff() throws Exception {
+        Mockito.when(userService.searchUsersByBirthDateRange(any(Date.class), any(Date.class))).thenReturn(List.of());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search")
+                        .param("from", "1990-01-01")
+                        .param("to", "2100-01-01")
+                        .param("eligibleOnly", "true"))
+                .andExpect(status().isOk());
+
+        ArgumentCaptor<Date> to = ArgumentCaptor.forClass(Date.class);
+        Mockito.verify(userService).searchUsersByBirthDateRange(any(Date.class), to.capture());
+        assertTrue(to.getValue().before(new Date(System.currentTimeMillis() - 17L * 365 * 24 * 60 * 60 * 1000)));
+    }
+
+    @Test
+    public void testSearchUserByBirthDateRange_EligibleOnlyAndOnlyMinors_ReturnsEmptyWithoutSearching() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search")
+                        .param("from", "2099-01-01")
+                        .param("to", "2100-01-01")
+                        .param("eligibleOnly", "true"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().json("[]"));
+
+        Mockito.verifyNoInteractions(userService);
+    }
+
+    @Test
+    public void testSearchUserPageByBirthDateRange_ValidDateRange_Returns200Ok() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        user.setEmail("test@example.com");
+
+        Mockito.when(userService.searchUsersByBirthDateRange(any(Date.class), any(Date.class), isNull(), eq(1)))
+                .thenReturn(new UserPage(List.of(user), "next"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search/page")
+                        .param("from", "2023-09-20")
+                        .param("to", "2023-09-27")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[0].email").value("test@example.com"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamUserByBirthDateRange_WritesOneJsonObjectPerLine() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            Consumer<User> consumer = invocation.getArgument(2);
+            for (long id = 1; id <= 2; id++) {
+                User user = new User();
+                user.setId(id);
+                consumer.accept(user);
+            }
+            return null;
+        }).when(userService).streamUsersByBirthDateRange(any(Date.class), any(Date.class), any(Consumer.class));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search/stream")
+                        .param("from", "2023-09-20")
+                        .param("to", "2023-09-27"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[1].contains("\"id\":2"));
+    }
+
+    @Test
+    public void testStreamUserByBirthDateRange_ReversedRange_Returns400ProblemWithoutStreaming() throws Exception {
+        Mockito.doThrow(new InvalidRequestException("From date must be before To date."))
+                .when(userService).validateDateRange(any(Date.class), any(Date.class));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/search/stream")
+                        .param("from", "2000-01-01")
+                        .param("to", "1990-01-01"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_PROBLEM_JSON))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.detail").value("From date must be before To date."));
+    }
+
     private String asJsonString(Object obj) throws Exception {
         ObjectMapper objectMapper = new ObjectMapper();
         return objectMapper.writeValueAsString(obj);
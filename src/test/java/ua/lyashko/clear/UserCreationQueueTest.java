@@ -0,0 +1,158 @@
+package ua.lyashko.clear;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import ua.lyashko.clear.dto.UserBatchResult;
+import ua.lyashko.clear.dto.UserCreationStatus;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.service.UserCreationQueue;
+import ua.lyashko.clear.service.UserService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+
+public class UserCreationQueueTest {
+    private final UserService userService = Mockito.mock(UserService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch writerReleased = new CountDownLatch(1);
+    private final CountDownLatch writerBusy = new CountDownLatch(1);
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong ticker = new AtomicLong();
+    private UserCreationQueue queue;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        writerReleased.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    public void testSubmit_WriterCreatesUserAndReportsId() throws Exception {
+        queue = startQueue(10, false);
+
+        UUID trackingId = queue.submit(new User()).orElseThrow();
+
+        UserCreationStatus status = awaitDone(trackingId);
+        assertEquals(UserCreationStatus.Status.CREATED, status.status());
+        assertEquals(1L, status.id());
+        assertEquals(1, meterRegistry.get("user.async-create.flush").timer().count());
+    }
+
+    @Test
+    public void testSubmit_FullQueue_RefusesUser() throws Exception {
+        queue = startQueue(1, true);
+        queue.submit(new User()).orElseThrow();
+        assertTrue(writerBusy.await(5, TimeUnit.SECONDS));
+
+        Optional<UUID> queued = queue.submit(new User());
+        Optional<UUID> refused = queue.submit(new User());
+
+        assertTrue(queued.isPresent());
+        assertTrue(refused.isEmpty());
+        assertEquals(UserCreationStatus.Status.PENDING, queue.status(queued.get()).orElseThrow().status());
+        assertEquals(1, meterRegistry.get("user.async-create.queue.depth").gauge().value());
+        assertEquals(1, meterRegistry.get("user.async-create.submissions").tag("outcome", "queue_full").counter().count());
+    }
+
+    @Test
+    public void testStatus_PendingOutlivesTtlUntilDecided() throws Exception {
+        queue = startQueue(10, true);
+        queue.submit(new User()).orElseThrow();
+        assertTrue(writerBusy.await(5, TimeUnit.SECONDS));
+        UUID queued = queue.submit(new User()).orElseThrow();
+
+        ticker.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        assertEquals(UserCreationStatus.Status.PENDING, queue.status(queued).orElseThrow().status());
+
+        writerReleased.countDown();
+        assertEquals(UserCreationStatus.Status.CREATED, awaitDone(queued).status());
+        ticker.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        assertTrue(queue.status(queued).isEmpty());
+    }
+
+    @Test
+    public void testShutdown_DrainsQueuedUsers() throws Exception {
+        queue = startQueue(10, true);
+        queue.submit(new User()).orElseThrow();
+        assertTrue(writerBusy.await(5, TimeUnit.SECONDS));
+        List<UUID> queued = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            queued.add(queue.submit(new User()).orElseThrow());
+        }
+
+        Thread shutdown = new Thread(() -> {
+            try {
+                queue.shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        shutdown.start();
+        writerReleased.countDown();
+        shutdown.join(5000);
+
+        for (UUID trackingId : queued) {
+            assertEquals(UserCreationStatus.Status.CREATED, queue.status(trackingId).orElseThrow().status());
+        }
+        assertTrue(queue.submit(new User()).isEmpty());
+    }
+
+    @Test
+    public void testShutdown_WhileSubmitting_WritesEveryAcceptedUser() throws Exception {
+        queue = startQueue(100_000, false);
+        List<UUID> accepted = new ArrayList<>();
+        Thread submitter = new Thread(() -> {
+            Optional<UUID> trackingId;
+            while ((trackingId = queue.submit(new User())).isPresent()) {
+                accepted.add(trackingId.get());
+            }
+        });
+        submitter.start();
+        Thread.sleep(50);
+
+        queue.shutdown();
+        submitter.join(5000);
+
+        assertFalse(submitter.isAlive());
+        for (UUID trackingId : accepted) {
+            assertEquals(UserCreationStatus.Status.CREATED, queue.status(trackingId).orElseThrow().status());
+        }
+    }
+
+    private UserCreationQueue startQueue(int capacity, boolean holdFirstBatch) {
+        Mockito.when(userService.createUsers(anyMap())).thenAnswer(invocation -> {
+            if (holdFirstBatch && writerBusy.getCount() > 0) {
+                writerBusy.countDown();
+                writerReleased.await(5, TimeUnit.SECONDS);
+            }
+            Map<Integer, User> users = invocation.getArgument(0);
+            return users.keySet().stream().map(index -> UserBatchResult.created(index, ids.incrementAndGet())).toList();
+        });
+        UserCreationQueue creationQueue = new UserCreationQueue(userService, meterRegistry, capacity, 100,
+                Duration.ofSeconds(5), Duration.ofMinutes(1), 1000, ticker::get);
+        creationQueue.start();
+        return creationQueue;
+    }
+
+    private UserCreationStatus awaitDone(UUID trackingId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        UserCreationStatus status = queue.status(trackingId).orElseThrow();
+        while (status.status() == UserCreationStatus.Status.PENDING && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            status = queue.status(trackingId).orElseThrow();
+        }
+        return status;
+    }
+}
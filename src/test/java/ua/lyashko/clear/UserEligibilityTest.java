@@ -0,0 +1,81 @@
+package ua.lyashko.clear;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import ua.lyashko.clear.service.UserEligibility;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserEligibilityTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "2026-10-17, 2008-10-17, true",
+            "2026-10-17, 2008-10-18, false",
+            "2026-10-17, 2008-10-16, true",
+            // born on 29 February: the birthday falls on 1 March in common years
+            "2026-02-28, 2008-02-29, false",
+            "2026-03-01, 2008-02-29, true",
+            "2024-02-29, 2006-02-28, true",
+            "2024-02-29, 2006-03-01, false",
+            // the old 365-day year counted this user as adult four days early
+            "2026-10-14, 2008-10-17, false"
+    })
+    public void testIsEligible_CalendarBirthdays(LocalDate today, LocalDate birthDay, boolean eligible) {
+        UserEligibility eligibility = new UserEligibility(clockAt(today.atTime(12, 0).toInstant(ZoneOffset.UTC)), 18);
+
+        assertEquals(eligible, eligibility.isEligible(startOf(birthDay)));
+    }
+
+    @Test
+    public void testIsEligible_LastMillisecondBeforeBirthdayIsNotEnough() {
+        UserEligibility eligibility = new UserEligibility(clockAt(Instant.parse("2026-10-17T00:00:00Z")), 18);
+
+        assertTrue(eligibility.isEligible(new Date(startOf(LocalDate.of(2008, 10, 18)).getTime() - 1)));
+        assertFalse(eligibility.isEligible(startOf(LocalDate.of(2008, 10, 18))));
+        assertEquals(startOf(LocalDate.of(2008, 10, 18)).getTime() - 1, eligibility.latestEligibleBirthDate().getTime());
+    }
+
+    @Test
+    public void testCutoff_MovesWhenTheDayRollsOver() {
+        AtomicLong now = new AtomicLong(Instant.parse("2026-10-17T23:59:59.999Z").toEpochMilli());
+        UserEligibility eligibility = new UserEligibility(new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(java.time.ZoneId zone) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(now.get());
+            }
+        }, 18);
+        Date birthDate = startOf(LocalDate.of(2008, 10, 18));
+
+        assertFalse(eligibility.isEligible(birthDate));
+        now.addAndGet(1);
+        assertTrue(eligibility.isEligible(birthDate));
+        assertEquals(LocalDate.of(2026, 10, 18).toEpochDay(), eligibility.cutoffDay());
+    }
+
+    private static Clock clockAt(Instant instant) {
+        return Clock.fixed(instant, ZoneOffset.UTC);
+    }
+
+    private static Date startOf(LocalDate day) {
+        return Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+}
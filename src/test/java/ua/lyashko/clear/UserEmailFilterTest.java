@@ -0,0 +1,117 @@
+package ua.lyashko.clear;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ua.lyashko.clear.repository.UserEmailFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@Import({UserEmailFilter.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = {
+        "user.email-filter.enabled=true",
+        "user.email-filter.expected-emails=100000",
+        "user.email-filter.false-positive-rate=0.01"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserEmailFilterTest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserEmailFilter filter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate.update("INSERT INTO users (id, email) " +
+                "SELECT X, ' User' || X || '@Example.com' FROM SYSTEM_RANGE(1, 1000)");
+        filter.rebuild();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("TRUNCATE TABLE users");
+    }
+
+    @Test
+    public void testRebuild_KnowsEveryNormalizedEmail() {
+        double duplicates = checks("duplicate");
+        for (int i = 1; i <= 1000; i++) {
+            String email = "user" + i + "@example.com";
+            assertTrue(filter.contains(email.toUpperCase(), normalized -> normalized.equals(email)), email);
+        }
+        assertEquals(1000, checks("duplicate") - duplicates);
+    }
+
+    @Test
+    public void testContains_NewEmails_MostlySkipTheLookup() {
+        double falsePositives = checks("false_positive");
+        AtomicInteger lookups = new AtomicInteger();
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(filter.contains("new" + i + "@example.com", normalized -> {
+                lookups.incrementAndGet();
+                return false;
+            }));
+        }
+
+        // sized for 100k at 1 %, with 1k entries false positives are far rarer still
+        assertTrue(lookups.get() < 100, "lookups: " + lookups);
+        assertEquals(lookups.get(), checks("false_positive") - falsePositives);
+    }
+
+    @Test
+    public void testAdd_ConcurrentWriters_LoseNoEmail() throws Exception {
+        int threads = 8;
+        int perThread = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    filter.add("writer" + thread + "-" + i + "@example.com");
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                assertTrue(filter.contains("writer" + t + "-" + i + "@example.com", normalized -> true));
+            }
+        }
+        assertEquals(1000 + threads * perThread, meterRegistry.get("user.email-filter.size").gauge().value());
+    }
+
+    private double checks(String result) {
+        return meterRegistry.get("user.email-filter.checks").tag("result", result).counter().count();
+    }
+}
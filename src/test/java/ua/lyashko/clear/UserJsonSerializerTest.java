@@ -0,0 +1,84 @@
+package ua.lyashko.clear;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ua.lyashko.clear.controller.UserJsonCache;
+import ua.lyashko.clear.controller.UserJsonSerializer;
+import ua.lyashko.clear.entity.User;
+
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserJsonSerializerTest {
+    private final ObjectMapper defaultMapper = bootMapper().build();
+    private final UserJsonSerializer serializer = new UserJsonSerializer();
+    private final ObjectMapper tunedMapper = bootMapper().serializerByType(User.class, serializer).build();
+
+    @Test
+    public void testSerialize_WritesSameJsonAsBeanSerializer() throws Exception {
+        List<User> users = List.of(
+                user(1L, new Date(631152000000L), 0L),
+                // time of day, before the epoch, and a year past 9999
+                user(2L, new Date(-1234567890123L), 3L),
+                user(3L, new Date(253402300800000L), 1L),
+                user(null, null, null),
+                new User());
+        users.get(1).setAddress("Вулиця \"Хрещатик\", 1\n");
+
+        String json = tunedMapper.writeValueAsString(users);
+        assertTrue(json.contains("\"birthDate\":\"1990-01-01T00:00:00.000+00:00\""), json);
+        assertEquals(defaultMapper.writeValueAsString(users), json);
+    }
+
+    @Test
+    public void testSerialize_OtherDateSettings_FallBackToMapper() throws Exception {
+        User user = user(1L, new Date(-1234567890123L), 0L);
+
+        for (Jackson2ObjectMapperBuilder builder : List.of(
+                Jackson2ObjectMapperBuilder.json(),
+                bootMapper().timeZone(TimeZone.getTimeZone("Europe/Kyiv")),
+                bootMapper().simpleDateFormat("yyyy-MM-dd"))) {
+            String expected = builder.build().writeValueAsString(user);
+            String actual = builder.serializerByType(User.class, serializer).build().writeValueAsString(user);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testSerialize_WithCache_ReusesJsonUntilVersionChanges() throws Exception {
+        serializer.setJsonCache(new UserJsonCache(new SimpleMeterRegistry(), 100));
+        User user = user(1L, new Date(631152000000L), 0L);
+        String first = tunedMapper.writeValueAsString(List.of(user, user));
+
+        // without a version bump the cached bytes are served as they were
+        user.setFirstName("Changed");
+        assertEquals(first, tunedMapper.writeValueAsString(List.of(user, user)));
+
+        user.setVersion(1L);
+        assertEquals(defaultMapper.writeValueAsString(user), tunedMapper.writeValueAsString(user));
+        assertTrue(tunedMapper.writeValueAsString(user).contains("\"firstName\":\"Changed\""));
+    }
+
+    // Spring Boot writes dates as ISO-8601 text, the plain builder as timestamps
+    private static Jackson2ObjectMapperBuilder bootMapper() {
+        return Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    private static User user(Long id, Date birthDate, Long version) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail("john.doe@example.com");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setBirthDate(birthDate);
+        user.setPhoneNumber("+1-408-996-1010");
+        user.setVersion(version);
+        return user;
+    }
+}
@@ -0,0 +1,84 @@
+package ua.lyashko.clear;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Drives a create/update/search mix against the application started with the {@code perf} profile and
+ * prints throughput and latency percentiles overall and per operation. Run with
+ * {@code ./mvnw test -Dtest=UserLoadTest -Dloadtest=true}; tune it with
+ * {@code -Dloadtest.profile}, {@code -Dloadtest.seed}, {@code -Dloadtest.concurrency},
+ * {@code -Dloadtest.requests} and {@code -Dloadtest.mix=create:20,update:20,search:60}.
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+public class UserLoadTest {
+    private static final String PROFILE = System.getProperty("loadtest.profile", "perf");
+    private static final int SEED_USERS = Integer.getInteger("loadtest.seed", 100_000);
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 64);
+    private static final int REQUESTS = Integer.getInteger("loadtest.requests", 20_000);
+    private static final String MIX = System.getProperty("loadtest.mix", "create:20,update:20,search:60");
+    private static final LocalDate SEED_NEWEST_BIRTH_DATE = LocalDate.of(2005, 1, 1);
+
+    @Test
+    public void testMixedLoad_CompletesWithoutErrors() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ClearApplication.class)
+                .profiles(PROFILE)
+                .run("--server.port=0", "--spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=64",
+                        "--user.rate-limit.enabled=false")) {
+            // negative ids keep the seed out of the way of users_seq; ~5 users a day over ~55 years
+            context.getBean(JdbcTemplate.class).update("INSERT INTO users (id, email, first_name, last_name, birth_date) " +
+                    "SELECT -X, 'seed' || X || '@example.com', 'First', 'Last', " +
+                    "DATEADD('DAY', -MOD(X, 20000), TIMESTAMP '2005-01-01 00:00:00') FROM SYSTEM_RANGE(1, " + SEED_USERS + ")");
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/users";
+
+            LoadDriver driver = new LoadDriver(CONCURRENCY);
+            driver.runMix(PROFILE + " warmup", REQUESTS / 5, operations(base, "warmup"));
+            List<LoadDriver.Report> reports = driver.runMix(PROFILE, REQUESTS, operations(base, "run"));
+
+            reports.forEach(System.out::println);
+            assertEquals(0, reports.get(0).errors(), reports.get(0).toString());
+        }
+    }
+
+    private static List<LoadDriver.Operation> operations(String base, String phase) {
+        List<LoadDriver.Operation> operations = new ArrayList<>();
+        for (String entry : MIX.split(",")) {
+            String[] nameAndWeight = entry.split(":");
+            int weight = Integer.parseInt(nameAndWeight[1].trim());
+            String name = nameAndWeight[0].trim();
+            operations.add(switch (name) {
+                case "create" -> new LoadDriver.Operation(name, weight, i -> HttpRequest.newBuilder(URI.create(base))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"email\":\"load-" + phase + i + "@example.com\"," +
+                                "\"firstName\":\"Load\",\"lastName\":\"Test\",\"birthDate\":\"1990-01-01\"}"))
+                        .build());
+                case "update" -> new LoadDriver.Operation(name, weight, i -> HttpRequest.newBuilder(URI.create(base + "/" + -randomSeedId()))
+                        .header("Content-Type", "application/json")
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"address\":\"Street " + i + "\"}"))
+                        .build());
+                case "search" -> new LoadDriver.Operation(name, weight, i -> {
+                    LocalDate from = SEED_NEWEST_BIRTH_DATE.minusDays(ThreadLocalRandom.current().nextInt(20_000));
+                    return HttpRequest.newBuilder(URI.create(base + "/search?from=" + from + "&to=" + from.plusDays(30))).build();
+                });
+                default -> throw new IllegalArgumentException("Unknown operation in loadtest.mix: " + name);
+            });
+        }
+        return operations;
+    }
+
+    private static int randomSeedId() {
+        return ThreadLocalRandom.current().nextInt(1, SEED_USERS + 1);
+    }
+}
@@ -0,0 +1,73 @@
+package ua.lyashko.clear;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ua.lyashko.clear.config.StartupReport;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.exception.ConflictException;
+import ua.lyashko.clear.service.UserService;
+
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Restarts the application on the same database file with the {@code persistent} profile and checks
+ * that every user is back, and that the email filter was rebuilt from them. Prints the restore report.
+ * Two restarts over a large seed take a while, so it only runs with
+ * {@code ./mvnw test -Dtest=UserPersistentStorageTest -Dloadtest=true}; {@code -Dstorage.users} sets
+ * how many users are seeded.
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+public class UserPersistentStorageTest {
+    private static final int USERS = Integer.getInteger("storage.users", 200_000);
+
+    @TempDir
+    private Path storage;
+
+    @Test
+    public void testRestart_RestoresEveryUser() {
+        Long createdId;
+        try (ConfigurableApplicationContext context = start()) {
+            // negative ids keep the seed out of the way of users_seq
+            context.getBean(JdbcTemplate.class).update("INSERT INTO users (id, email, first_name, last_name, birth_date) " +
+                    "SELECT -X, 'seed' || X || '@example.com', 'First', 'Last', " +
+                    "DATEADD('DAY', -MOD(X, 20000), TIMESTAMP '2005-01-01 00:00:00') FROM SYSTEM_RANGE(1, " + USERS + ")");
+            createdId = context.getBean(UserService.class).createUser(user("kept@example.com")).getId();
+        }
+
+        try (ConfigurableApplicationContext context = start()) {
+            StartupReport report = context.getBean(StartupReport.class);
+            System.out.printf("Restored %d users in %d ms (%.0f users/s)%n",
+                    report.users(), report.startup().toMillis(), report.usersPerSecond());
+            UserService userService = context.getBean(UserService.class);
+
+            assertEquals(USERS + 1, report.users());
+            assertEquals("kept@example.com", userService.findUser(createdId).orElseThrow().getEmail());
+            assertThrows(ConflictException.class, () -> userService.createUser(user("Seed42@example.com")));
+            assertTrue(userService.createUser(user("new@example.com")).getId() > createdId);
+        }
+    }
+
+    private ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(ClearApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("persistent")
+                .run("--user.storage.path=" + storage.resolve("users"));
+    }
+
+    private static User user(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setBirthDate(new Date(0));
+        return user;
+    }
+}
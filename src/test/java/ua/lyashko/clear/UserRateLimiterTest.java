@@ -0,0 +1,110 @@
+package ua.lyashko.clear;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import ua.lyashko.clear.controller.UserController;
+import ua.lyashko.clear.exception.TooManyRequestsException;
+import ua.lyashko.clear.handler.UserRateLimiter;
+import ua.lyashko.clear.service.UserChangeTracker;
+import ua.lyashko.clear.service.UserEligibility;
+import ua.lyashko.clear.service.UserService;
+import ua.lyashko.clear.validation.UserValidator;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(UserController.class)
+@Import({UserValidator.class, SimpleMeterRegistry.class, UserChangeTracker.class, UserEligibility.class})
+@TestPropertySource(properties = {"user.rate-limit.enabled=true", "user.rate-limit.requests-per-second=1", "user.rate-limit.burst=2",
+        "user.rate-limit.client-header=X-Client-Id"})
+public class UserRateLimiterTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserRateLimiter limiter = new UserRateLimiter(10, 5, "", 100, meterRegistry, clock::get);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private UserService userService;
+
+    @Test
+    public void testAcquire_BurstThenLimitedUntilRefill() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.acquire("client"));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.acquire("client"));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0, limiter.acquire("client"));
+        assertTrue(limiter.acquire("client") > 0);
+        assertEquals(6, meterRegistry.get("user.rate-limit.requests").tag("outcome", "allowed").counter().count());
+        assertEquals(2, meterRegistry.get("user.rate-limit.requests").tag("outcome", "limited").counter().count());
+    }
+
+    @Test
+    public void testAcquire_IdleBucketHoldsNoMoreThanBurst() {
+        clock.addAndGet(TimeUnit.HOURS.toNanos(1));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.acquire("client"));
+        }
+        assertTrue(limiter.acquire("client") > 0);
+    }
+
+    @Test
+    public void testPreHandle_ClientsAreLimitedSeparately() {
+        MockHttpServletRequest first = new MockHttpServletRequest();
+        first.setRemoteAddr("10.0.0.1");
+        MockHttpServletRequest second = new MockHttpServletRequest();
+        second.setRemoteAddr("10.0.0.2");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.preHandle(first, new MockHttpServletResponse(), null));
+        }
+
+        TooManyRequestsException limited = assertThrows(TooManyRequestsException.class,
+                () -> limiter.preHandle(first, new MockHttpServletResponse(), null));
+        assertEquals(1, limited.retryAfterSeconds());
+        assertTrue(limiter.preHandle(second, new MockHttpServletResponse(), null));
+    }
+
+    @Test
+    public void testSearch_OverLimit_Returns429WithRetryAfter() throws Exception {
+        Mockito.when(userService.searchUsersByBirthDateRange(any(Date.class), any(Date.class))).thenReturn(List.of());
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(search("limited-client")).andExpect(status().isOk());
+        }
+        mockMvc.perform(search("limited-client"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(MockMvcResultMatchers.header().string("Retry-After", "1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status").value(429));
+        mockMvc.perform(search("other-client")).andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users/{id}", 1).header("X-Client-Id", "limited-client"))
+                .andExpect(status().isNotFound());
+    }
+
+    private static MockHttpServletRequestBuilder search(String client) {
+        return MockMvcRequestBuilders.get("/api/users/search")
+                .param("from", "2000-01-01")
+                .param("to", "2000-12-31")
+                .header("X-Client-Id", client);
+    }
+}
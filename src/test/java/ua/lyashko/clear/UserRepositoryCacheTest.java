@@ -0,0 +1,113 @@
+package ua.lyashko.clear;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.cache.CacheType;
+import org.springframework.boot.test.autoconfigure.core.AutoConfigureCache;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ua.lyashko.clear.config.UserCacheConfig;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.repository.UserRepository;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(UserCacheConfig.class)
+@AutoConfigureCache(cacheProvider = CacheType.CAFFEINE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserRepositoryCacheTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        userRepository.deleteAll();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    public void testFindById_SecondLookupIsServedFromCache() {
+        User user = userRepository.save(newUser("cached@example.com"));
+        cacheManager.getCache(UserCacheConfig.USERS_BY_ID).clear();
+
+        userRepository.findById(user.getId());
+        jdbcTemplate.update("UPDATE users SET email = 'changed@example.com' WHERE id = ?", user.getId());
+        User cached = userRepository.findById(user.getId()).orElseThrow();
+
+        assertEquals("cached@example.com", cached.getEmail());
+        CacheStats stats = nativeCache(UserCacheConfig.USERS_BY_ID).stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(1, stats.missCount());
+    }
+
+    @Test
+    public void testSave_ReplacesCachedEntry() {
+        User user = userRepository.save(newUser("old@example.com"));
+        userRepository.findById(user.getId());
+
+        user.setEmail("new@example.com");
+        userRepository.save(user);
+
+        assertEquals("new@example.com", userRepository.findById(user.getId()).orElseThrow().getEmail());
+    }
+
+    @Test
+    public void testDeleteById_EvictsCachedEntries() {
+        User user = userRepository.save(newUser("deleted@example.com"));
+        assertTrue(userRepository.existsById(user.getId()));
+        assertTrue(userRepository.findById(user.getId()).isPresent());
+
+        userRepository.deleteById(user.getId());
+
+        assertFalse(userRepository.existsById(user.getId()));
+        assertFalse(userRepository.findById(user.getId()).isPresent());
+    }
+
+    @Test
+    public void testPatchById_FailedWrite_EvictsCachedEntryAndKeepsUser() {
+        User user = userRepository.save(newUser("kept@example.com"));
+        userRepository.save(newUser("taken@example.com"));
+        userRepository.findById(user.getId());
+        User patch = new User();
+        patch.setEmail("taken@example.com");
+
+        assertThrows(DataIntegrityViolationException.class, () -> userRepository.patchById(user.getId(), patch));
+
+        assertNull(nativeCache(UserCacheConfig.USERS_BY_ID).getIfPresent(user.getId()));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE id = ?", Integer.class, user.getId()));
+        assertEquals("kept@example.com", userRepository.findById(user.getId()).orElseThrow().getEmail());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<Object, Object> nativeCache(String name) {
+        return ((CaffeineCache) cacheManager.getCache(name)).getNativeCache();
+    }
+
+    private User newUser(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setBirthDate(new Date(0));
+        return user;
+    }
+}
@@ -0,0 +1,235 @@
+package ua.lyashko.clear;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ua.lyashko.clear.dto.UserExportFormat;
+import ua.lyashko.clear.dto.UserField;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.repository.UserRepository;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserRepositoryTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User existingUser;
+
+    @BeforeEach
+    public void setUp() {
+        userRepository.deleteAll();
+        User user = new User();
+        user.setEmail("old@example.com");
+        user.setFirstName("Old");
+        user.setLastName("User");
+        user.setBirthDate(new Date(0));
+        user.setAddress("Old street");
+        existingUser = userRepository.save(user);
+    }
+
+    @Test
+    public void testPatchById_OnlyWritesNonNullFieldsAndBumpsVersion() {
+        User patch = new User();
+        patch.setFirstName("New");
+
+        User updated = userRepository.patchById(existingUser.getId(), patch).orElseThrow();
+
+        assertEquals("New", updated.getFirstName());
+        assertEquals("old@example.com", updated.getEmail());
+        assertEquals("Old street", updated.getAddress());
+        assertEquals(existingUser.getVersion() + 1, updated.getVersion());
+    }
+
+    @Test
+    public void testPatchById_EmptyPatchKeepsVersion() {
+        User updated = userRepository.patchById(existingUser.getId(), new User()).orElseThrow();
+
+        assertEquals(existingUser.getVersion(), updated.getVersion());
+        assertEquals("Old", updated.getFirstName());
+    }
+
+    @Test
+    public void testReplaceById_OverwritesEveryField() {
+        User replacement = new User();
+        replacement.setEmail("new@example.com");
+        replacement.setFirstName("New");
+        replacement.setLastName("Person");
+        replacement.setBirthDate(new Date(1000));
+
+        User updated = userRepository.replaceById(existingUser.getId(), replacement).orElseThrow();
+
+        assertEquals("new@example.com", updated.getEmail());
+        assertEquals("Person", updated.getLastName());
+        assertNull(updated.getAddress());
+        assertEquals(existingUser.getVersion() + 1, updated.getVersion());
+        assertEquals("new@example.com", userRepository.findById(existingUser.getId()).orElseThrow().getEmail());
+    }
+
+    @Test
+    public void testPatchByIdAndVersion_StaleVersion_LeavesUserUntouched() {
+        User patch = new User();
+        patch.setFirstName("New");
+
+        Optional<User> updated = userRepository.patchByIdAndVersion(existingUser.getId(), existingUser.getVersion() + 1, patch);
+
+        assertTrue(updated.isEmpty());
+        assertEquals("Old", userRepository.findById(existingUser.getId()).orElseThrow().getFirstName());
+        assertEquals("New", userRepository.patchByIdAndVersion(existingUser.getId(), existingUser.getVersion(), patch)
+                .orElseThrow().getFirstName());
+    }
+
+    @Test
+    public void testPatchById_UnknownId_ReturnsEmpty() {
+        User patch = new User();
+        patch.setFirstName("New");
+
+        Optional<User> updated = userRepository.patchById(existingUser.getId() + 1000, patch);
+
+        assertTrue(updated.isEmpty());
+    }
+
+    @Test
+    public void testFindAllByIdInOrder_KeepsOrderAndSkipsUnknownIds() {
+        User younger = new User();
+        younger.setEmail("young@example.com");
+        younger.setBirthDate(new Date(1000));
+        younger = userRepository.save(younger);
+
+        List<User> users = userRepository.findAllByIdInOrder(
+                new long[]{existingUser.getId(), younger.getId(), younger.getId() + 1000});
+
+        assertEquals(List.of(existingUser.getId(), younger.getId()), users.stream().map(User::getId).toList());
+    }
+
+    @Test
+    public void testBulkPatchById_UpdatesEveryKnownUser() {
+        User other = new User();
+        other.setEmail("other@example.com");
+        other.setFirstName("Other");
+        other = userRepository.save(other);
+        User patch = new User();
+        patch.setLastName("Bulk");
+
+        List<User> updated = userRepository.bulkPatchById(List.of(existingUser.getId(), other.getId(), -1L), patch);
+
+        assertEquals(2, updated.size());
+        assertTrue(updated.stream().allMatch(user -> "Bulk".equals(user.getLastName()) && user.getVersion() == 1));
+        assertEquals("Old", userRepository.findById(existingUser.getId()).orElseThrow().getFirstName());
+    }
+
+    @Test
+    public void testPatchById_TakenEmail_FailsAndKeepsUser() {
+        User other = new User();
+        other.setEmail("taken@example.com");
+        userRepository.save(other);
+        User patch = new User();
+        patch.setEmail("Taken@example.com");
+
+        assertThrows(DataIntegrityViolationException.class, () -> userRepository.patchById(existingUser.getId(), patch));
+        assertThrows(DataIntegrityViolationException.class,
+                () -> userRepository.patchByIdAndVersion(existingUser.getId(), existingUser.getVersion(), patch));
+
+        User kept = userRepository.findAllByIdInOrder(new long[]{existingUser.getId()}).get(0);
+        assertEquals("old@example.com", kept.getEmail());
+        assertEquals(existingUser.getVersion(), kept.getVersion());
+    }
+
+    @Test
+    public void testBulkPatchById_TakenEmail_LeavesEveryUserUntouched() {
+        User other = new User();
+        other.setEmail("other@example.com");
+        other = userRepository.save(other);
+        User patch = new User();
+        patch.setEmail("same@example.com");
+
+        long[] ids = {existingUser.getId(), other.getId()};
+        assertThrows(DataIntegrityViolationException.class,
+                () -> userRepository.bulkPatchById(List.of(ids[0], ids[1]), patch));
+
+        List<User> kept = userRepository.findAllByIdInOrder(ids);
+        assertEquals(2, kept.size());
+        assertTrue(kept.stream().noneMatch(user -> "same@example.com".equals(user.getEmail())));
+    }
+
+    @Test
+    public void testBulkDeleteById_ReturnsDeletedIds() {
+        List<Long> deleted = userRepository.bulkDeleteById(List.of(existingUser.getId(), -1L));
+
+        assertEquals(List.of(existingUser.getId()), deleted);
+        assertFalse(userRepository.existsById(existingUser.getId()));
+    }
+
+    @Test
+    public void testBulkDeleteByBirthDateBetween_DeletesAcrossSeveralChunks() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            User user = new User();
+            user.setEmail("purge" + i + "@example.com");
+            user.setBirthDate(new Date(5000));
+            users.add(user);
+        }
+        userRepository.insertAll(users);
+
+        List<Long> deleted = userRepository.bulkDeleteByBirthDateBetween(new Date(5000), new Date(6000));
+
+        assertEquals(1200, deleted.size());
+        assertEquals(1, userRepository.count());
+    }
+
+    @Test
+    public void testExportByBirthDateBetween_Csv_QuotesOnlyWhenNeeded() {
+        User quoted = new User();
+        quoted.setEmail("quoted@example.com");
+        quoted.setFirstName("Jo, \"Jr\"");
+        quoted.setBirthDate(new Date(86_400_000));
+        quoted = userRepository.save(quoted);
+        StringWriter out = new StringWriter();
+
+        userRepository.exportByBirthDateBetween(null, null, UserExportFormat.CSV, out);
+
+        assertEquals("id,email,firstName,lastName,birthDate,address,phoneNumber,version\n" +
+                existingUser.getId() + ",old@example.com,Old,User,1970-01-01T00:00:00Z,Old street,,0\n" +
+                quoted.getId() + ",quoted@example.com,\"Jo, \"\"Jr\"\"\",,1970-01-02T00:00:00Z,,,0\n", out.toString());
+    }
+
+    @Test
+    public void testExportByBirthDateBetween_Ndjson_WritesOneObjectPerLineInRange() {
+        User later = new User();
+        later.setEmail("later@example.com");
+        later.setBirthDate(new Date(86_400_000));
+        userRepository.save(later);
+        StringWriter out = new StringWriter();
+
+        userRepository.exportByBirthDateBetween(new Date(0), new Date(1000), UserExportFormat.NDJSON, out);
+
+        assertEquals("{\"id\":" + existingUser.getId() + ",\"email\":\"old@example.com\",\"firstName\":\"Old\"," +
+                "\"lastName\":\"User\",\"birthDate\":\"1970-01-01T00:00:00Z\",\"address\":\"Old street\"," +
+                "\"phoneNumber\":null,\"version\":0}\n", out.toString());
+    }
+
+    @Test
+    public void testFindFieldsByBirthDateBetween_ReadsOnlySelectedColumns() {
+        List<Map<String, Object>> rows = userRepository.findFieldsByBirthDateBetween(new Date(0), new Date(1000),
+                List.of(UserField.EMAIL, UserField.BIRTH_DATE));
+
+        assertEquals(1, rows.size());
+        assertEquals(List.of("email", "birthDate"), List.copyOf(rows.get(0).keySet()));
+        assertEquals("old@example.com", rows.get(0).get("email"));
+        assertEquals(0L, ((Date) rows.get(0).get("birthDate")).getTime());
+    }
+}
@@ -0,0 +1,76 @@
+package ua.lyashko.clear;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserSchemaTest {
+    private static final int ROWS = 1_000_000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    public void setUp() {
+        // birth dates spread over ~55 years, about 50 users per day
+        jdbcTemplate.update("INSERT INTO users (id, email, first_name, last_name, birth_date) " +
+                "SELECT X, 'user' || X || '@example.com', 'First', 'Last', " +
+                "DATEADD('DAY', -MOD(X, 20000), TIMESTAMP '2005-01-01 00:00:00') " +
+                "FROM SYSTEM_RANGE(1, " + ROWS + ")");
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @AfterAll
+    public void tearDown() {
+        jdbcTemplate.execute("TRUNCATE TABLE users");
+    }
+
+    @Test
+    public void testBirthDateRangeSearch_UsesBirthDateIndex() {
+        String plan = explain("SELECT id, email FROM users " +
+                "WHERE birth_date BETWEEN TIMESTAMP '1990-01-01 00:00:00' AND TIMESTAMP '1990-02-01 00:00:00'");
+
+        assertTrue(plan.contains("IDX_USERS_BIRTH_DATE_ID"), plan);
+        assertFalse(plan.contains("tableScan"), plan);
+    }
+
+    @Test
+    public void testKeysetPage_ReadsIndexInOrderWithoutSorting() {
+        String plan = explain("SELECT id, email FROM users " +
+                "WHERE birth_date BETWEEN TIMESTAMP '1990-01-01 00:00:00' AND TIMESTAMP '1990-02-01 00:00:00' " +
+                "AND (birth_date > TIMESTAMP '1990-01-10 00:00:00' " +
+                "OR (birth_date = TIMESTAMP '1990-01-10 00:00:00' AND id > 500)) " +
+                "ORDER BY birth_date, id FETCH FIRST 51 ROWS ONLY");
+
+        assertTrue(plan.contains("IDX_USERS_BIRTH_DATE_ID"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    public void testEmail_IsUnique() {
+        assertThrows(DataIntegrityViolationException.class, () -> jdbcTemplate.update(
+                "INSERT INTO users (id, email) VALUES (?, ?)", ROWS + 1, "user1@example.com"));
+    }
+
+    @Test
+    public void testEmail_IsUniqueIgnoringCaseAndBlanks() {
+        assertThrows(DataIntegrityViolationException.class, () -> jdbcTemplate.update(
+                "INSERT INTO users (id, email) VALUES (?, ?)", ROWS + 1, " User1@Example.COM"));
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+    }
+}
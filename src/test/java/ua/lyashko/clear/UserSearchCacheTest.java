@@ -0,0 +1,135 @@
+package ua.lyashko.clear;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.util.unit.DataSize;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.exception.InvalidRequestException;
+import ua.lyashko.clear.service.UserChangeTracker;
+import ua.lyashko.clear.service.UserSearchCache;
+import ua.lyashko.clear.service.UserService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+public class UserSearchCacheTest {
+    private static final Date FROM = new Date(0);
+    private static final Date TO = new Date(TimeUnit.DAYS.toMillis(365));
+
+    private final UserService userService = Mockito.mock(UserService.class);
+    private final UserChangeTracker changeTracker = new UserChangeTracker();
+    private final UserSearchCache searchCache = new UserSearchCache(userService, changeTracker, new ObjectMapper(),
+            new SimpleMeterRegistry(), Duration.ofMinutes(1), DataSize.ofMegabytes(1));
+
+    @Test
+    public void testSearch_ConcurrentIdenticalSearches_ShareOneQuery() throws Exception {
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+        Mockito.when(userService.searchUsersByBirthDateRange(any(Date.class), any(Date.class))).thenAnswer(invocation -> {
+            queryStarted.countDown();
+            assertTrue(releaseQuery.await(5, TimeUnit.SECONDS));
+            return List.of(user(1L));
+        });
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            results.add(callers.submit(() -> searchCache.search(FROM, TO)));
+            assertTrue(queryStarted.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) {
+                results.add(callers.submit(() -> searchCache.search(FROM, TO)));
+            }
+            // let the waiters reach the running query before it completes
+            Thread.sleep(100);
+            releaseQuery.countDown();
+
+            for (Future<byte[]> result : results) {
+                assertTrue(new String(result.get(5, TimeUnit.SECONDS)).contains("\"id\":1"));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        Mockito.verify(userService, Mockito.times(1)).searchUsersByBirthDateRange(FROM, TO);
+    }
+
+    @Test
+    public void testSearch_AfterWrite_QueriesAgain() {
+        Mockito.when(userService.searchUsersByBirthDateRange(any(Date.class), any(Date.class)))
+                .thenReturn(List.of(user(1L)))
+                .thenReturn(List.of(user(1L), user(2L)));
+
+        searchCache.search(FROM, TO);
+        byte[] cached = searchCache.search(FROM, TO);
+        changeTracker.changed();
+        byte[] fresh = searchCache.search(FROM, TO);
+
+        assertFalse(new String(cached).contains("\"id\":2"));
+        assertTrue(new String(fresh).contains("\"id\":2"));
+        Mockito.verify(userService, Mockito.times(2)).searchUsersByBirthDateRange(FROM, TO);
+    }
+
+    @Test
+    public void testSearch_Failure_IsRethrownAndNotCached() {
+        InvalidRequestException invalid = new InvalidRequestException("Invalid date range.");
+        Mockito.when(userService.searchUsersByBirthDateRange(any(Date.class), any(Date.class)))
+                .thenThrow(invalid)
+                .thenReturn(List.of());
+
+        assertSame(invalid, assertThrows(InvalidRequestException.class, () -> searchCache.search(FROM, TO)));
+        assertEquals("[]", new String(searchCache.search(FROM, TO)));
+    }
+
+    @Test
+    public void testSearch_Error_ReleasesWaitersAndIsNotCached() throws Exception {
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+        Mockito.when(userService.searchUsersByBirthDateRange(any(Date.class), any(Date.class))).thenAnswer(invocation -> {
+            queryStarted.countDown();
+            assertTrue(releaseQuery.await(5, TimeUnit.SECONDS));
+            throw new OutOfMemoryError("Java heap space");
+        }).thenReturn(List.of());
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<byte[]> first = callers.submit(() -> searchCache.search(FROM, TO));
+            assertTrue(queryStarted.await(5, TimeUnit.SECONDS));
+            Future<byte[]> waiter = callers.submit(() -> searchCache.search(FROM, TO));
+            Thread.sleep(100);
+            releaseQuery.countDown();
+
+            assertInstanceOf(OutOfMemoryError.class,
+                    assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS)).getCause());
+            assertInstanceOf(OutOfMemoryError.class,
+                    assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS)).getCause());
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals("[]", new String(searchCache.search(FROM, TO)));
+    }
+
+    @Test
+    public void testSearch_InvalidRange_RejectedBeforeTheCache() {
+        InvalidRequestException invalid = new InvalidRequestException("Invalid date range.");
+        Mockito.doThrow(invalid).when(userService).validateDateRange(TO, FROM);
+
+        assertSame(invalid, assertThrows(InvalidRequestException.class, () -> searchCache.search(TO, FROM)));
+        Mockito.verify(userService, Mockito.never()).searchUsersByBirthDateRange(any(Date.class), any(Date.class));
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+}
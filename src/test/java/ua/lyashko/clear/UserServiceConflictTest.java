@@ -0,0 +1,112 @@
+package ua.lyashko.clear;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ua.lyashko.clear.dto.UserBatchResult;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.exception.ConflictException;
+import ua.lyashko.clear.exception.InvalidRequestException;
+import ua.lyashko.clear.repository.UserRepository;
+import ua.lyashko.clear.service.UserChangeTracker;
+import ua.lyashko.clear.service.UserEligibility;
+import ua.lyashko.clear.service.UserService;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Duplicate emails on update and bulk patch, refused by the real unique index rather than a mock, and
+ * values too long for their column, which are not duplicates.
+ */
+@DataJpaTest
+@Import({UserService.class, UserChangeTracker.class, UserEligibility.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserServiceConflictTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User kept;
+    private User other;
+
+    @BeforeEach
+    public void setUp() {
+        userRepository.deleteAll();
+        kept = userService.createUser(newUser("kept@example.com"));
+        other = userService.createUser(newUser("taken@example.com"));
+    }
+
+    @Test
+    public void testUpdate_TakenEmail_IsConflictAndKeepsUser() {
+        User changes = newUser(" Taken@Example.com");
+
+        assertThrows(ConflictException.class, () -> userService.updateUser(kept.getId(), changes));
+        assertThrows(ConflictException.class, () -> userService.updatePartialUser(kept.getId(), changes));
+        assertThrows(ConflictException.class,
+                () -> userService.updatePartialUser(kept.getId(), changes, kept.getVersion()));
+
+        assertUnchanged();
+    }
+
+    @Test
+    public void testBulkPatch_TakenEmail_IsConflictAndKeepsEveryUser() {
+        User patch = new User();
+        patch.setEmail("same@example.com");
+
+        assertThrows(ConflictException.class,
+                () -> userService.updatePartialUsers(List.of(kept.getId(), other.getId()), patch));
+
+        assertUnchanged();
+    }
+
+    @Test
+    public void testWrite_TooLongAddress_IsInvalidRequestNotConflict() {
+        User tooLong = newUser("long@example.com");
+        tooLong.setAddress("a".repeat(256));
+
+        assertThrows(InvalidRequestException.class, () -> userService.createUser(tooLong));
+        assertThrows(InvalidRequestException.class, () -> userService.updatePartialUser(kept.getId(), tooLong));
+
+        assertUnchanged();
+    }
+
+    @Test
+    public void testCreateUsers_TooLongAndDuplicate_RejectedWithTheirOwnReasons() {
+        User tooLong = newUser("long@example.com");
+        tooLong.setAddress("a".repeat(256));
+
+        List<UserBatchResult> results = userService.createUsers(Map.of(
+                0, newUser("new@example.com"), 1, tooLong, 2, newUser("TAKEN@example.com")));
+
+        assertEquals(UserBatchResult.Status.CREATED, results.get(0).status());
+        assertEquals(List.of("User has a value the database cannot store, such as a field over 255 characters."),
+                results.get(1).errors());
+        assertEquals(List.of("A user with this email already exists."), results.get(2).errors());
+    }
+
+    private void assertUnchanged() {
+        List<User> users = userService.searchUsersByBirthDateRange(new Date(0), new Date(0));
+        assertEquals(List.of("kept@example.com", "taken@example.com"), users.stream().map(User::getEmail).sorted().toList());
+        assertEquals(kept.getVersion(), userService.findUser(kept.getId()).orElseThrow().getVersion());
+    }
+
+    private static User newUser(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setBirthDate(new Date(0));
+        return user;
+    }
+}
@@ -5,18 +5,40 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.lyashko.clear.dto.UserBatchResult;
+import ua.lyashko.clear.dto.UserBulkResult;
+import ua.lyashko.clear.dto.UserCursor;
+import ua.lyashko.clear.dto.UserPage;
 import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.exception.ConflictException;
+import ua.lyashko.clear.exception.IneligibleUserException;
+import ua.lyashko.clear.exception.InvalidRequestException;
+import ua.lyashko.clear.exception.PreconditionFailedException;
 import ua.lyashko.clear.exception.ResourceNotFoundException;
+import ua.lyashko.clear.repository.UserBirthDateIndex;
+import ua.lyashko.clear.repository.UserEmailFilter;
 import ua.lyashko.clear.repository.UserRepository;
+import ua.lyashko.clear.service.UserChangeTracker;
+import ua.lyashko.clear.service.UserEligibility;
 import ua.lyashko.clear.service.UserService;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class UserServiceTest {
@@ -24,6 +46,12 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Spy
+    private UserChangeTracker changeTracker = new UserChangeTracker();
+
+    @Spy
+    private UserEligibility eligibility = new UserEligibility(0);
+
     @InjectMocks
     private UserService userService;
 
@@ -31,6 +59,8 @@ public class UserServiceTest {
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(userService, "defaultPageSize", 50);
+        ReflectionTestUtils.setField(userService, "maxPageSize", 1000);
     }
 
     @Test
@@ -51,31 +81,97 @@ public class UserServiceTest {
         assertEquals("Doe", createdUser.getLastName());
     }
 
+    @Test
+    public void testCreateUser_KnownEmail_ThrowsConflictWithoutInsert() {
+        UserEmailFilter emailFilter = mock(UserEmailFilter.class);
+        userService.setEmailFilter(emailFilter);
+        User user = new User();
+        user.setEmail("Taken@Example.com");
+        user.setBirthDate(new Date());
+
+        when(emailFilter.contains(eq("Taken@Example.com"), any())).thenReturn(true);
+
+        assertThrows(ConflictException.class, () -> userService.createUser(user));
+        verify(userRepository, never()).save(any());
+        verify(emailFilter, never()).add(any());
+    }
+
+    @Test
+    public void testCreateUser_ConcurrentDuplicate_UniqueIndexViolationBecomesConflict() {
+        UserEmailFilter emailFilter = mock(UserEmailFilter.class);
+        userService.setEmailFilter(emailFilter);
+        User user = new User();
+        user.setEmail("racy@example.com");
+        user.setBirthDate(new Date());
+
+        when(userRepository.save(user)).thenThrow(new DataIntegrityViolationException("duplicate",
+                new SQLException("Unique index or primary key violation: \"PUBLIC.UX_USERS_EMAIL_NORMALIZED\"", "23505")));
+
+        assertThrows(ConflictException.class, () -> userService.createUser(user));
+        verify(emailFilter, never()).add(any());
+    }
+
+    @Test
+    public void testCreateUser_Ineligible_ThrowsWithoutStackTrace() {
+        ReflectionTestUtils.setField(userService, "eligibility", new UserEligibility(18));
+        User user = new User();
+        user.setBirthDate(new Date());
+
+        IneligibleUserException e = assertThrows(IneligibleUserException.class, () -> userService.createUser(user));
+
+        assertEquals("User must be at least 18 years old.", e.getMessage());
+        assertEquals(0, e.getStackTrace().length);
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    public void testCreateUsers_MixedEligibility_ReturnsResultsInIndexOrder() {
+        ReflectionTestUtils.setField(userService, "eligibility", new UserEligibility(18));
+        User adult = userWithIdAndBirthDate(null, new Date(0));
+        User child = userWithIdAndBirthDate(null, new Date());
+        Map<Integer, User> batch = new LinkedHashMap<>();
+        batch.put(3, child);
+        batch.put(7, adult);
+
+        when(userRepository.insertAll(List.of(adult))).thenAnswer(invocation -> {
+            adult.setId(42L);
+            return List.of(adult);
+        });
+
+        List<UserBatchResult> results = userService.createUsers(batch);
+
+        assertEquals(2, results.size());
+        assertEquals(UserBatchResult.Status.REJECTED, results.get(0).status());
+        assertEquals(3, results.get(0).index());
+        assertEquals(UserBatchResult.Status.CREATED, results.get(1).status());
+        assertEquals(42L, results.get(1).id());
+    }
+
     @Test
     public void testUpdateUser_ValidUser() {
         Long userId = 1L;
-        User existingUser = new User();
-        existingUser.setId(userId);
-        existingUser.setEmail("old@example.com");
-        existingUser.setFirstName("Old");
-        existingUser.setLastName("User");
-        existingUser.setBirthDate(new Date());
-
         User updatedUser = new User();
         updatedUser.setEmail("new@example.com");
         updatedUser.setFirstName("New");
         updatedUser.setLastName("User");
 
-        when(userRepository.findById(userId)).thenReturn(Optional.of(existingUser));
-        when(userRepository.save(any(User.class))).thenReturn(updatedUser);
+        User savedUser = new User();
+        savedUser.setId(userId);
+        savedUser.setEmail("new@example.com");
+        savedUser.setFirstName("New");
+        savedUser.setLastName("User");
+        savedUser.setVersion(1L);
+
+        when(userRepository.replaceById(userId, updatedUser)).thenReturn(Optional.of(savedUser));
 
         Optional<User> result = userService.updateUser(userId, updatedUser);
 
         assertTrue(result.isPresent());
-        User savedUser = result.get();
-        assertEquals("new@example.com", savedUser.getEmail());
-        assertEquals("New", savedUser.getFirstName());
-        assertEquals("User", savedUser.getLastName());
+        assertEquals("new@example.com", result.get().getEmail());
+        assertEquals("New", result.get().getFirstName());
+        assertEquals("User", result.get().getLastName());
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).save(any());
     }
 
     @Test
@@ -86,7 +182,7 @@ public class UserServiceTest {
         updatedUser.setFirstName("New");
         updatedUser.setLastName("User");
 
-        when(userRepository.findById(userId)).thenReturn(Optional.empty());
+        when(userRepository.replaceById(userId, updatedUser)).thenReturn(Optional.empty());
 
         Optional<User> result = userService.updateUser(userId, updatedUser);
 
@@ -96,27 +192,27 @@ public class UserServiceTest {
     @Test
     public void testUpdatePartialUser_ValidUser() {
         Long userId = 1L;
-        User existingUser = new User();
-        existingUser.setId(userId);
-        existingUser.setEmail("old@example.com");
-        existingUser.setFirstName("Old");
-        existingUser.setLastName("User");
-        existingUser.setBirthDate(new Date());
-
         User partialUser = new User();
         partialUser.setEmail("new@example.com");
         partialUser.setFirstName("New");
 
-        when(userRepository.findById(userId)).thenReturn(Optional.of(existingUser));
-        when(userRepository.save(any(User.class))).thenReturn(existingUser);
+        User savedUser = new User();
+        savedUser.setId(userId);
+        savedUser.setEmail("new@example.com");
+        savedUser.setFirstName("New");
+        savedUser.setLastName("User");
+        savedUser.setVersion(1L);
+
+        when(userRepository.patchById(userId, partialUser)).thenReturn(Optional.of(savedUser));
 
         Optional<User> result = userService.updatePartialUser(userId, partialUser);
 
         assertTrue(result.isPresent());
-        User savedUser = result.get();
-        assertEquals("new@example.com", savedUser.getEmail());
-        assertEquals("New", savedUser.getFirstName());
-        assertEquals("User", savedUser.getLastName());
+        assertEquals("new@example.com", result.get().getEmail());
+        assertEquals("New", result.get().getFirstName());
+        assertEquals("User", result.get().getLastName());
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).save(any());
     }
 
     @Test
@@ -126,7 +222,7 @@ public class UserServiceTest {
         partialUser.setEmail("new@example.com");
         partialUser.setFirstName("New");
 
-        when(userRepository.findById(userId)).thenReturn(Optional.empty());
+        when(userRepository.patchById(userId, partialUser)).thenReturn(Optional.empty());
 
         Optional<User> result = userService.updatePartialUser(userId, partialUser);
 
@@ -174,11 +270,153 @@ public class UserServiceTest {
         assertEquals(2, result.size());
     }
 
+    @Test
+    public void testUpdatePartialUser_StaleVersion_ThrowsPreconditionFailed() {
+        User partialUser = new User();
+        partialUser.setFirstName("Jane");
+
+        when(userRepository.patchByIdAndVersion(1L, 3L, partialUser)).thenReturn(Optional.empty());
+        when(userRepository.existsById(1L)).thenReturn(true);
+
+        assertThrows(PreconditionFailedException.class, () -> userService.updatePartialUser(1L, partialUser, 3L));
+        assertEquals(0, changeTracker.generation());
+    }
+
+    @Test
+    public void testUpdateUser_MatchingVersion_RecordsChange() {
+        User updatedUser = new User();
+        User savedUser = userWithIdAndBirthDate(1L, new Date(0));
+
+        when(userRepository.replaceByIdAndVersion(1L, 3L, updatedUser)).thenReturn(Optional.of(savedUser));
+
+        assertEquals(Optional.of(savedUser), userService.updateUser(1L, updatedUser, 3L));
+        assertEquals(1, changeTracker.generation());
+        verify(userRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    public void testDeleteUsers_ReportsIdsThatWereNotFound() {
+        when(userRepository.bulkDeleteById(List.of(1L, 2L, 3L))).thenReturn(List.of(1L, 3L));
+
+        UserBulkResult result = userService.deleteUsers(List.of(1L, 2L, 3L, 1L));
+
+        assertEquals(2, result.affected());
+        assertEquals(List.of(2L), result.notFound());
+    }
+
+    @Test
+    public void testUpdatePartialUsers_ReportsIdsThatWereNotFound() {
+        User patch = new User();
+        patch.setLastName("Purged");
+
+        when(userRepository.bulkPatchById(List.of(1L, 2L), patch))
+                .thenReturn(List.of(userWithIdAndBirthDate(2L, new Date(0))));
+
+        UserBulkResult result = userService.updatePartialUsers(List.of(1L, 2L), patch);
+
+        assertEquals(1, result.affected());
+        assertEquals(List.of(1L), result.notFound());
+    }
+
+    @Test
+    public void testSearchUsersByBirthDateRange_WithIndex_LoadsIndexedIds() {
+        Date from = new Date(0);
+        Date to = new Date();
+        UserBirthDateIndex index = mock(UserBirthDateIndex.class);
+        userService.setBirthDateIndex(index);
+        User user = userWithIdAndBirthDate(3L, new Date(3000));
+
+        when(index.findIdsByBirthDateBetween(from, to)).thenReturn(new long[]{3L});
+        when(userRepository.findAllByIdInOrder(new long[]{3L})).thenReturn(List.of(user));
+
+        List<User> result = userService.searchUsersByBirthDateRange(from, to);
+
+        assertEquals(List.of(user), result);
+        verify(userRepository, never()).findByBirthDateBetween(any(), any());
+    }
+
+    @Test
+    public void testDeleteUser_WithIndex_RemovesUserFromIndex() {
+        UserBirthDateIndex index = mock(UserBirthDateIndex.class);
+        userService.setBirthDateIndex(index);
+
+        when(userRepository.existsById(5L)).thenReturn(true);
+
+        userService.deleteUser(5L);
+
+        verify(index).remove(5L);
+    }
+
+    @Test
+    public void testCreateUser_WithEmailFilter_AddsCreatedEmail() {
+        UserEmailFilter emailFilter = mock(UserEmailFilter.class);
+        userService.setEmailFilter(emailFilter);
+        User user = new User();
+        user.setEmail("fresh@example.com");
+        user.setBirthDate(new Date());
+
+        when(userRepository.save(user)).thenReturn(user);
+
+        userService.createUser(user);
+
+        verify(emailFilter).add("fresh@example.com");
+    }
+
     @Test
     public void testSearchUsersByBirthDateRange_InvalidDates() {
         Date from = new Date();
         Date to = new Date(System.currentTimeMillis() - 365L * 24 * 60 * 60 * 1000);
 
-        assertThrows(IllegalArgumentException.class, () -> userService.searchUsersByBirthDateRange(from, to));
+        assertThrows(InvalidRequestException.class, () -> userService.searchUsersByBirthDateRange(from, to));
+    }
+
+    @Test
+    public void testSearchUsersPageByBirthDateRange_MoreRowsThanPageSize_ReturnsCursor() {
+        Date from = new Date(0);
+        Date to = new Date();
+        User first = userWithIdAndBirthDate(1L, new Date(1000));
+        User second = userWithIdAndBirthDate(2L, new Date(2000));
+        User third = userWithIdAndBirthDate(3L, new Date(3000));
+
+        when(userRepository.findByBirthDateBetweenOrderByBirthDateAscIdAsc(eq(from), eq(to), any(Pageable.class)))
+                .thenReturn(new ArrayList<>(List.of(first, second, third)));
+
+        UserPage page = userService.searchUsersByBirthDateRange(from, to, null, 2);
+
+        assertEquals(2, page.users().size());
+        UserCursor cursor = UserCursor.decode(page.nextCursor());
+        assertEquals(2L, cursor.id());
+        assertEquals(2000L, cursor.birthDate().getTime());
+    }
+
+    @Test
+    public void testSearchUsersPageByBirthDateRange_WithCursor_ContinuesAfterCursor() {
+        Date from = new Date(0);
+        Date to = new Date();
+        String cursor = new UserCursor(new Date(2000), 2L).encode();
+        User third = userWithIdAndBirthDate(3L, new Date(3000));
+
+        when(userRepository.findByBirthDateBetweenAfter(eq(from), eq(to), eq(new Date(2000)), eq(2L), any(Pageable.class)))
+                .thenReturn(new ArrayList<>(List.of(third)));
+
+        UserPage page = userService.searchUsersByBirthDateRange(from, to, cursor, 2);
+
+        assertEquals(1, page.users().size());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    public void testSearchUsersPageByBirthDateRange_SizeAboveLimit() {
+        Date from = new Date(0);
+        Date to = new Date();
+
+        assertThrows(InvalidRequestException.class, () -> userService.searchUsersByBirthDateRange(from, to, null, 1001));
+    }
+
+    private User userWithIdAndBirthDate(Long id, Date birthDate) {
+        User user = new User();
+        user.setId(id);
+        user.setBirthDate(birthDate);
+        return user;
     }
 }
@@ -0,0 +1,138 @@
+package ua.lyashko.clear;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ua.lyashko.clear.dto.UserHistogram;
+import ua.lyashko.clear.repository.UserSnapshot;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@Import({UserSnapshot.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = {"user.snapshot.enabled=true", "user.snapshot.refresh-interval=1h"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserSnapshotTest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserSnapshot snapshot;
+
+    @BeforeEach
+    public void setUp() {
+        // birth years 1980 to 1989, a hundred users each, addresses alternating between two cities
+        jdbcTemplate.update("INSERT INTO users (id, email, address, birth_date) " +
+                "SELECT X, 'user' || X || '@example.com', CASEWHEN(MOD(X, 2) = 0, 'Kyiv', 'Lviv'), " +
+                "DATEADD('YEAR', MOD(X, 10), TIMESTAMP '1980-06-15 00:00:00') FROM SYSTEM_RANGE(1, 1000)");
+        snapshot.refresh();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("TRUNCATE TABLE users");
+        snapshot.refresh();
+    }
+
+    @Test
+    public void testHistogram_ByBirthYear_MatchesTheTable() {
+        UserHistogram histogram = snapshot.histogram(UserHistogram.Dimension.BIRTH_YEAR, 1, null);
+
+        assertEquals(1000, histogram.total());
+        assertEquals(0, histogram.unknown());
+        assertEquals(10, histogram.buckets().size());
+        Map<Integer, Long> byYear = histogram.buckets().stream()
+                .collect(Collectors.toMap(UserHistogram.Bucket::from, UserHistogram.Bucket::count));
+        for (int year = 1980; year <= 1989; year++) {
+            assertEquals(100L, byYear.get(year));
+        }
+    }
+
+    @Test
+    public void testHistogram_WiderBucketsAndAddressFilter() {
+        UserHistogram histogram = snapshot.histogram(UserHistogram.Dimension.BIRTH_YEAR, 5, "Kyiv");
+
+        assertEquals(500, histogram.total());
+        // even ids are born in even years: 1980, 1982 and 1984, then 1986 and 1988
+        assertEquals(List.of(new UserHistogram.Bucket(1980, 1984, 300), new UserHistogram.Bucket(1985, 1989, 200)),
+                histogram.buckets());
+        assertEquals(0, snapshot.histogram(UserHistogram.Dimension.BIRTH_YEAR, 1, "Odesa").total());
+    }
+
+    @Test
+    public void testHistogram_ByAge_CountsCompletedYears() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        insert(2001, today.minusYears(30));
+        insert(2002, today.minusYears(30).plusDays(1));
+        insert(2003, today.plusDays(1));
+        snapshot.refresh();
+
+        UserHistogram histogram = snapshot.histogram(UserHistogram.Dimension.AGE, 1, null);
+
+        Map<Integer, Long> byAge = histogram.buckets().stream()
+                .collect(Collectors.toMap(UserHistogram.Bucket::from, UserHistogram.Bucket::count));
+        assertEquals(1L, byAge.get(30));
+        assertEquals(1L, byAge.get(29));
+        assertEquals(1, histogram.unknown());
+        assertEquals(1003, histogram.total());
+    }
+
+    @Test
+    public void testRefresh_PicksUpInsertsUpdatesAndDeletes() {
+        insert(2001, LocalDate.of(1995, 3, 1));
+        jdbcTemplate.update("UPDATE users SET birth_date = ? WHERE id = 10", Timestamp.valueOf("1995-07-01 00:00:00"));
+        jdbcTemplate.update("UPDATE users SET address = 'Odesa' WHERE id = 11");
+        jdbcTemplate.update("DELETE FROM users WHERE id BETWEEN 1 AND 5");
+        snapshot.refresh();
+
+        UserHistogram histogram = snapshot.histogram(UserHistogram.Dimension.BIRTH_YEAR, 1, null);
+        Map<Integer, Long> byYear = histogram.buckets().stream()
+                .collect(Collectors.toMap(UserHistogram.Bucket::from, UserHistogram.Bucket::count));
+
+        assertEquals(996, snapshot.size());
+        assertEquals(996, histogram.total());
+        assertEquals(2L, byYear.get(1995));
+        assertEquals(1L, snapshot.histogram(UserHistogram.Dimension.BIRTH_YEAR, 1, "Odesa").total());
+        assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE YEAR(birth_date) = 1989", Long.class),
+                byYear.get(1989));
+    }
+
+    @Test
+    public void testRefresh_PicksUpRowsCommittedWithOldChangeSeq() {
+        // a long transaction took its change_seq values before more than the overlap were committed
+        long old = jdbcTemplate.queryForObject("SELECT MAX(change_seq) FROM users", Long.class) - 5000;
+        jdbcTemplate.update("UPDATE users SET email = 'other@example.com' WHERE id = 12");
+        snapshot.refresh();
+        jdbcTemplate.update("INSERT INTO users (id, email, birth_date, change_seq) VALUES (?, ?, ?, ?)",
+                2001, "late@example.com", Timestamp.valueOf("1995-03-01 00:00:00"), old);
+        jdbcTemplate.update("UPDATE users SET birth_date = ?, change_seq = ? WHERE id = 10",
+                Timestamp.valueOf("1996-03-01 00:00:00"), old + 1);
+        snapshot.refresh();
+
+        Map<Integer, Long> byYear = snapshot.histogram(UserHistogram.Dimension.BIRTH_YEAR, 1, null).buckets().stream()
+                .collect(Collectors.toMap(UserHistogram.Bucket::from, UserHistogram.Bucket::count));
+        assertEquals(1001, snapshot.size());
+        assertEquals(1L, byYear.get(1995));
+        assertEquals(1L, byYear.get(1996));
+    }
+
+    private void insert(long id, LocalDate birthDate) {
+        jdbcTemplate.update("INSERT INTO users (id, email, birth_date) VALUES (?, ?, ?)",
+                id, "extra" + id + "@example.com", Timestamp.valueOf(birthDate.atStartOfDay()));
+    }
+}
@@ -0,0 +1,72 @@
+package ua.lyashko.clear;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ua.lyashko.clear.entity.User;
+import ua.lyashko.clear.validation.UserValidator;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserValidatorTest {
+    private static final Instant NOW = Instant.parse("2023-09-27T12:00:00Z");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserValidator userValidator = new UserValidator(Clock.fixed(NOW, ZoneOffset.UTC), meterRegistry);
+
+    @ParameterizedTest
+    @ValueSource(strings = {"test@example.com", "a@b", "john.doe+tag@example.com", "a_b-c@d@e", "x@ ",
+            "@example.com", "test", "test@", "te st@example.com", "tést@example.com", "test@exa\nmple.com",
+            "test@example.com\n", "test@example.com ", "test@example\u0085com", ""})
+    public void testValidate_EmailRuleMatchesRegex(String email) {
+        User user = validUser();
+        user.setEmail(email);
+
+        boolean expected = email.matches("^[A-Za-z0-9+_.-]+@(.+)$");
+
+        assertEquals(expected, userValidator.validate(user).isEmpty(), email);
+    }
+
+    @Test
+    public void testValidate_ValidUser_ReturnsSharedEmptyList() {
+        List<String> first = userValidator.validate(validUser());
+        List<String> second = userValidator.validate(validUser());
+
+        assertTrue(first.isEmpty());
+        assertSame(first, second);
+    }
+
+    @Test
+    public void testValidate_EmptyUser_ReportsEveryRule() {
+        List<String> errors = userValidator.validate(new User());
+
+        assertEquals(List.of("Invalid email address.", "First name is required.", "Last name is required.",
+                "Invalid birth date or date in the future."), errors);
+        assertEquals(1, meterRegistry.get("user.validation.failures").tag("field", "email").counter().count());
+        assertEquals(1, meterRegistry.get("user.validation.failures").tag("field", "birthDate").counter().count());
+    }
+
+    @Test
+    public void testValidate_BirthDateAtOrAfterNow_IsRejected() {
+        User user = validUser();
+        user.setBirthDate(Date.from(NOW));
+
+        assertEquals(List.of("Invalid birth date or date in the future."), userValidator.validate(user));
+    }
+
+    private User validUser() {
+        User user = new User();
+        user.setEmail("test@example.com");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setBirthDate(Date.from(NOW.minusSeconds(1)));
+        return user;
+    }
+}
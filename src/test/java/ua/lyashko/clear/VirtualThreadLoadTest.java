@@ -0,0 +1,90 @@
+package ua.lyashko.clear;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ua.lyashko.clear.repository.UserRepository;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares the platform-thread and the virtual-thread mode under a slow database. Every repository call is
+ * delayed by {@code SLOW_QUERY_MILLIS}, and far more clients than Tomcat threads hit the search endpoint.
+ * Run with {@code ./mvnw test -Dtest=VirtualThreadLoadTest -Dloadtest=true} on Java 21.
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+public class VirtualThreadLoadTest {
+    private static final long SLOW_QUERY_MILLIS = 50;
+    private static final int TOMCAT_THREADS = 50;
+    private static final int CONCURRENCY = 400;
+    private static final int REQUESTS = 10_000;
+
+    @Test
+    public void testVirtualThreads_OutperformPlatformThreadsUnderSlowDatabase() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "virtual threads require Java 21");
+
+        LoadDriver.Report platform = runSearchLoad("platform-threads");
+        LoadDriver.Report virtual = runSearchLoad("virtual-threads");
+
+        System.out.println(platform);
+        System.out.println(virtual);
+        assertEquals(0, platform.errors());
+        assertEquals(0, virtual.errors());
+        assertTrue(virtual.throughput() > platform.throughput(), virtual + " vs " + platform);
+    }
+
+    private LoadDriver.Report runSearchLoad(String profile) throws InterruptedException {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ClearApplication.class)
+                .profiles(profile)
+                .initializers(ctx -> ctx.getBeanFactory().addBeanPostProcessor(new SlowRepositoryPostProcessor()))
+                .run("--server.port=0",
+                        "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "--server.tomcat.accept-count=" + CONCURRENCY,
+                        "--spring.datasource.url=jdbc:h2:mem:" + profile,
+                        "--user.cache.enabled=false",
+                        "--user.search.cache.enabled=false",
+                        "--user.rate-limit.enabled=false")) {
+            context.getBean(JdbcTemplate.class).update("INSERT INTO users (id, email, first_name, last_name, birth_date) " +
+                    "SELECT -X, 'seed' || X || '@example.com', 'First', 'Last', " +
+                    "DATEADD('DAY', -X, TIMESTAMP '2000-01-01 00:00:00') FROM SYSTEM_RANGE(1, 1000)");
+            String port = context.getEnvironment().getProperty("local.server.port");
+            URI search = URI.create("http://localhost:" + port + "/api/users/search?from=1999-01-01&to=1999-01-31");
+
+            LoadDriver driver = new LoadDriver(CONCURRENCY);
+            driver.run(profile + " warmup", REQUESTS / 5, i -> HttpRequest.newBuilder(search).build());
+            return driver.run(profile, REQUESTS, i -> HttpRequest.newBuilder(search).build());
+        }
+    }
+
+    /**
+     * Wraps the repository so every call blocks the calling thread, as it would waiting on a remote database.
+     */
+    private static class SlowRepositoryPostProcessor implements BeanPostProcessor {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof UserRepository repository)) {
+                return bean;
+            }
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{UserRepository.class},
+                    (proxy, method, args) -> {
+                        Thread.sleep(SLOW_QUERY_MILLIS);
+                        try {
+                            return method.invoke(repository, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}